@@ -0,0 +1,92 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// One warehouse of the ADAPTIVE mode. A coarse mover write-locks the region; a fine mover
+// read-locks it and then locks the stripes of the cells it touches. The two kinds exclude each
+// other through the read/write lock, so the region may flip between modes while moves are in
+// flight: a mover only has to be consistent with itself.
+public class AdaptiveRegion {
+    // decisions are taken once per window of acquisitions
+    static final int WINDOW = 1024;
+    // fraction of acquisitions that found the region busy; the gap gives hysteresis
+    static final double GO_FINE = 0.25;
+    static final double GO_COARSE = 0.05;
+
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    volatile boolean fine;
+    private final LockStats stats;
+    private final int index;
+
+    private final AtomicInteger ticks = new AtomicInteger();
+    private final LongAdder busy = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    final AtomicLong switches = new AtomicLong();
+    // last window's average wait per acquisition, for reporting
+    volatile long lastAvgWaitNanos;
+
+    AdaptiveRegion(LockStats stats, int index) {
+        this.stats = stats;
+        this.index = index;
+    }
+
+    // Takes the region lock in its current mode; returns true if it was taken in fine mode
+    boolean acquire() {
+        boolean asFine = fine;
+        if (asFine) {
+            long waited = 0;
+            if (!lock.readLock().tryLock()) {
+                long t0 = System.nanoTime();
+                lock.readLock().lock();
+                waited = Math.max(1, System.nanoTime() - t0);
+            }
+            if (stats.enabled()) stats.acquired(index, waited, false);
+            // under coarse locking these overlapping movers would have waited for each other
+            record(lock.getReadLockCount() > 1, waited);
+        } else if (lock.writeLock().tryLock()) {
+            if (stats.enabled()) stats.acquired(index, 0, true);
+            record(false, 0);
+        } else {
+            long t0 = System.nanoTime();
+            lock.writeLock().lock();
+            long waited = Math.max(1, System.nanoTime() - t0);
+            if (stats.enabled()) stats.acquired(index, waited, true);
+            record(true, waited);
+        }
+        return asFine;
+    }
+
+    void release(boolean asFine) {
+        if (asFine) {
+            lock.readLock().unlock();
+        } else {
+            stats.released(index);
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Contention met on a stripe lock by a fine mover of this region
+    void recordStripeWait(long nanos) {
+        busy.increment();
+        waitNanos.add(nanos);
+    }
+
+    private void record(boolean wasBusy, long nanos) {
+        if (wasBusy) busy.increment();
+        if (nanos > 0) waitNanos.add(nanos);
+        if (ticks.incrementAndGet() % WINDOW == 0) adapt();
+    }
+
+    private void adapt() {
+        double rate = busy.sumThenReset() / (double) WINDOW;
+        lastAvgWaitNanos = waitNanos.sumThenReset() / WINDOW;
+        if (!fine && rate > GO_FINE) {
+            fine = true;
+            switches.incrementAndGet();
+        } else if (fine && rate < GO_COARSE) {
+            fine = false;
+            switches.incrementAndGet();
+        }
+    }
+}
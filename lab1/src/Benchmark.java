@@ -7,23 +7,52 @@ public class Benchmark {
     final WarehouseSystem system;
     final int numThreads;
     final int opsPerThread;
+    final int batchSize;
+    final boolean virtualWorkers; // one (virtual) thread per worker instead of a fixed pool
+    final Workload workload;
+
+    // filled while system.instrumentation is enabled; striped so the workers don't share counters
+    final LatencyHistogram opLatency = LatencyHistogram.shared();
+    final LatencyHistogram auditLatency = LatencyHistogram.shared();
 
     public Benchmark(WarehouseSystem system, int numThreads, int opsPerThread) {
+        this(system, numThreads, opsPerThread, 1);
+    }
+
+    public Benchmark(WarehouseSystem system, int numThreads, int opsPerThread, int batchSize) {
+        this(system, numThreads, opsPerThread, batchSize, false);
+    }
+
+    public Benchmark(WarehouseSystem system, int numThreads, int opsPerThread, int batchSize,
+                     boolean virtualWorkers) {
+        this(system, numThreads, opsPerThread, batchSize, virtualWorkers, Workload.uniform(system.W, system.P));
+    }
+
+    public Benchmark(WarehouseSystem system, int numThreads, int opsPerThread, int batchSize,
+                     boolean virtualWorkers, Workload workload) {
         this.system = system;
         this.numThreads = numThreads;
         this.opsPerThread = opsPerThread;
+        this.batchSize = batchSize;
+        this.virtualWorkers = virtualWorkers;
+        this.workload = workload;
     }
 
     public void runAll() throws Exception {
         System.out.println("Initial total sum: " + system.sumAll());
 
-        ExecutorService ex = Executors.newFixedThreadPool(numThreads);
+        ExecutorService ex = virtualWorkers
+                ? VirtualThreads.newPerTaskExecutor()
+                : Executors.newFixedThreadPool(numThreads);
         List<Future<Integer>> futures = new ArrayList<>();
 
         long start = System.nanoTime();
 
+        boolean instrumented = system.instrumentation.isEnabled();
         for (int t = 0; t < numThreads; ++t) {
-            Worker w = new Worker(system, opsPerThread, 0xC0FFEE + t);
+            Worker w = instrumented
+                    ? new Worker(system, opsPerThread, 0xC0FFEE + t, batchSize, opLatency, auditLatency, workload)
+                    : new Worker(system, opsPerThread, 0xC0FFEE + t, batchSize, null, null, workload);
             futures.add(ex.submit(w));
         }
 
@@ -32,7 +61,9 @@ public class Benchmark {
         AtomicBoolean done = new AtomicBoolean(false);
         checker.scheduleAtFixedRate(() -> {
             if (done.get()) return;
+            long t0 = System.nanoTime();
             boolean ok = system.checkInvariants();
+            if (instrumented) auditLatency.record(System.nanoTime() - t0);
             if (!ok) {
                 System.err.println("Invariant check failed during scheduled checks!");
                 System.exit(2);
@@ -52,6 +83,24 @@ public class Benchmark {
                 totalSuccess, numThreads * opsPerThread, seconds);
 
         System.out.println("Final invariant check: " + (system.checkInvariants() ? "OK" : "FAILED"));
+        if (system.granularity == LockGranularity.ADAPTIVE) {
+            System.out.printf("Adaptive regions: %d/%d fine, %d switches\n",
+                    system.fineRegions(), system.W, system.regionSwitches());
+        }
         System.out.println("Final total sum: " + system.sumAll());
+
+        if (instrumented) {
+            Instrumentation in = system.instrumentation;
+            System.out.printf("Op latency us: p50=%.1f p99=%.1f p99.9=%.1f | audits: %d, %.1f ms total, %d blocking\n",
+                    opLatency.percentile(0.50) / 1e3, opLatency.percentile(0.99) / 1e3,
+                    opLatency.percentile(0.999) / 1e3, auditLatency.count(), auditLatency.total() / 1e6,
+                    system.snapshotFallbacks());
+            for (LockStats s : in.families()) {
+                if (s.acquisitions() == 0) continue;
+                System.out.printf("  %-9s locks: acquired=%d contended=%d wait=%.1f ms hold=%.1f ms hottest=#%d\n",
+                        s.name, s.acquisitions(), s.contended(), s.totalWaitNanos() / 1e6,
+                        s.totalHoldNanos() / 1e6, s.hottestLock());
+            }
+        }
     }
 }
\ No newline at end of file
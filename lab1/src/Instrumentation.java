@@ -0,0 +1,65 @@
+// Lock instrumentation of one WarehouseSystem, one LockStats per lock family. Off by default.
+public class Instrumentation {
+    volatile boolean enabled;
+
+    final LockStats global;
+    final LockStats warehouse; // warehouseLocks, OPTIMISTIC stamped locks and ADAPTIVE regions
+    final LockStats product;
+    final LockStats stripe;
+
+    public Instrumentation(int warehouses, int products, int stripes) {
+        this.global = new LockStats("global", this, 1);
+        this.warehouse = new LockStats("warehouse", this, warehouses);
+        this.product = new LockStats("product", this, products);
+        this.stripe = new LockStats("stripe", this, stripes);
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public LockStats[] families() {
+        return new LockStats[]{global, warehouse, product, stripe};
+    }
+
+    // All families together
+    public long acquisitions() {
+        long n = 0;
+        for (LockStats s : families()) n += s.acquisitions();
+        return n;
+    }
+
+    public long contended() {
+        long n = 0;
+        for (LockStats s : families()) n += s.contended();
+        return n;
+    }
+
+    public long totalWaitNanos() {
+        long n = 0;
+        for (LockStats s : families()) n += s.totalWaitNanos();
+        return n;
+    }
+
+    public long totalHoldNanos() {
+        long n = 0;
+        for (LockStats s : families()) n += s.totalHoldNanos();
+        return n;
+    }
+
+    public LatencyHistogram waitNanos() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (LockStats s : families()) h.add(s.waitNanos);
+        return h;
+    }
+
+    public LatencyHistogram holdNanos() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (LockStats s : families()) h.add(s.holdNanos);
+        return h;
+    }
+}
@@ -0,0 +1,122 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// HDR-style log-linear histogram of non-negative values (nanoseconds here). Values below 64 are
+// counted exactly; above that every power of two is split into 32 buckets, so any percentile is
+// within ~3% of the true value. Recording is one atomic increment, safe from many threads.
+// A histogram shared by many threads can be striped: each thread records into its own copy of
+// the buckets (picked by thread hash, so copies are shared only when threads outnumber them),
+// and the copies are summed when the histogram is read. A copy is allocated the first time a
+// thread records into it, so a histogram nobody records into costs a few hundred bytes, not
+// stripes * BUCKETS longs (~15 KiB each).
+public class LatencyHistogram {
+    static final int SUB_BITS = 5;
+    static final int SUB = 1 << SUB_BITS;
+    static final int BUCKETS = (62 - SUB_BITS) * SUB + 2 * SUB;
+
+    // stripes for histograms recorded from every worker: a power of two >= 2 * cores, at most 64
+    static final int SHARED_STRIPES =
+            Math.min(64, Integer.highestOneBit(2 * Runtime.getRuntime().availableProcessors() - 1) << 1);
+
+    private final int stripeMask;
+    private final AtomicReferenceArray<AtomicLongArray> stripes; // null until recorded into
+
+    public LatencyHistogram() {
+        this(1);
+    }
+
+    // stripes must be a power of two
+    public LatencyHistogram(int stripes) {
+        this.stripeMask = stripes - 1;
+        this.stripes = new AtomicReferenceArray<>(stripes);
+    }
+
+    public static LatencyHistogram shared() {
+        return new LatencyHistogram(SHARED_STRIPES);
+    }
+
+    public void record(long value) {
+        int stripe = stripeMask == 0 ? 0 : mix(System.identityHashCode(Thread.currentThread())) & stripeMask;
+        stripe(stripe).incrementAndGet(indexOf(Math.max(0, value)));
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; ++i) {
+            long c = other.bucket(i);
+            if (c != 0) stripe(0).addAndGet(i, c);
+        }
+    }
+
+    private AtomicLongArray stripe(int s) {
+        AtomicLongArray counts = stripes.get(s);
+        if (counts == null) {
+            stripes.compareAndSet(s, null, new AtomicLongArray(BUCKETS));
+            counts = stripes.get(s);
+        }
+        return counts;
+    }
+
+    public long count() {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; ++i) n += bucket(i);
+        return n;
+    }
+
+    // bucket i summed over the stripes recorded into so far
+    private long bucket(int i) {
+        long c = 0;
+        for (int s = 0; s < stripes.length(); ++s) {
+            AtomicLongArray counts = stripes.get(s);
+            if (counts != null) c += counts.get(i);
+        }
+        return c;
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 13);
+    }
+
+    // Approximate sum of all recorded values, from bucket midpoints
+    public long total() {
+        long sum = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            long c = bucket(i);
+            if (c != 0) sum += c * ((lowestOf(i) + highestOf(i)) / 2);
+        }
+        return sum;
+    }
+
+    // Value at or below which a fraction q (0..1) of the recorded values fall; 0 when empty
+    public long percentile(double q) {
+        long n = count();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += bucket(i);
+            if (seen >= rank) return highestOf(i);
+        }
+        return highestOf(BUCKETS - 1);
+    }
+
+    static int indexOf(long v) {
+        int msb = 63 - Long.numberOfLeadingZeros(v | 1);
+        if (msb <= SUB_BITS) return (int) v;
+        int shift = msb - SUB_BITS;
+        return shift * SUB + (int) (v >>> shift);
+    }
+
+    static long lowestOf(int idx) {
+        if (idx < 2 * SUB) return idx;
+        int shift = idx / SUB - 1;
+        return (long) (idx - shift * SUB) << shift;
+    }
+
+    static long highestOf(int idx) {
+        if (idx < 2 * SUB) return idx;
+        int shift = idx / SUB - 1;
+        return ((long) (idx - shift * SUB + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,223 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Inventory of the LOCK_FREE mode: every (warehouse, product) cell is a word updated with a
+// multi-word compare-and-swap (Harris/Fraser/Pratt style) so a move debits and credits all of its
+// cells atomically without locks. A thread that finds another operation's descriptor in a cell
+// helps that operation finish instead of waiting for it.
+public class LockFreeInventory {
+    // Immutable quantity box. Every write installs a fresh Cell, so reference comparison never
+    // suffers from ABA and two identical collects prove nothing changed in between.
+    static final class Cell {
+        final int qty;
+
+        Cell(int qty) {
+            this.qty = qty;
+        }
+    }
+
+    // Placed over a cell by a blocking snapshot: reads see the wrapped cell, moves touching it fail
+    // their descriptor and retry until the snapshot puts the cell back
+    static final class Frozen {
+        final Cell cell;
+
+        Frozen(Cell cell) {
+            this.cell = cell;
+        }
+    }
+
+    static final int UNDECIDED = 0, SUCCEEDED = 1, FAILED = 2;
+    static final int SNAPSHOT_COLLECTS = 8; // double-collect attempts before snapshot() freezes the cells
+
+    static final class Descriptor {
+        final int[] indices;    // sorted ascending, so helpers never wait on each other in a cycle
+        final Cell[] expected;
+        final Cell[] updated;
+        final AtomicInteger status = new AtomicInteger(UNDECIDED);
+
+        Descriptor(int[] indices, Cell[] expected, Cell[] updated) {
+            this.indices = indices;
+            this.expected = expected;
+            this.updated = updated;
+        }
+    }
+
+    final int W;
+    final int P;
+    // cells[w * P + p] holds either a Cell or the Descriptor of an operation in progress
+    final AtomicReferenceArray<Object> cells;
+    private final Object freezeLock = new Object();
+    private volatile boolean freezing; // movers back off while a blocking snapshot holds cells
+    final AtomicLong fallbacks = new AtomicLong(); // snapshots that had to freeze the cells
+
+    public LockFreeInventory(int[][] inventory, int warehouses, int products) {
+        this.W = warehouses;
+        this.P = products;
+        this.cells = new AtomicReferenceArray<>(W * P);
+        for (int w = 0; w < W; ++w)
+            for (int p = 0; p < P; ++p)
+                cells.set(w * P + p, new Cell(inventory[w][p]));
+    }
+
+    public int read(int w, int p) {
+        return readCell(w * P + p).qty;
+    }
+
+    private Cell readCell(int idx) {
+        while (true) {
+            Object cur = cells.get(idx);
+            if (cur instanceof Descriptor) {
+                help((Descriptor) cur);
+                continue;
+            }
+            if (cur instanceof Frozen) return ((Frozen) cur).cell;
+            return (Cell) cur;
+        }
+    }
+
+    // Every attempt allocates its descriptor and fresh cells; that is inherent to the algorithm.
+    public boolean move(int source, int dest, MoveDescriptor moves) {
+        int n = moves.size;
+        int[] prods = moves.products;
+        int[] amts = moves.amounts;
+        for (int k = 0; k < n; ++k) if (amts[k] < 0) return false;
+
+        while (true) {
+            int[] indices = new int[2 * n];
+            Cell[] expected = new Cell[2 * n];
+            Cell[] updated = new Cell[2 * n];
+            for (int i = 0; i < n; ++i) {
+                int src = source * P + prods[i];
+                int dst = dest * P + prods[i];
+                Cell s = readCell(src);
+                // a single cell read is linearizable, so rejecting here is a valid outcome
+                if (s.qty < amts[i]) return false;
+                Cell d = readCell(dst);
+                indices[2 * i] = src;
+                expected[2 * i] = s;
+                updated[2 * i] = new Cell(s.qty - amts[i]);
+                indices[2 * i + 1] = dst;
+                expected[2 * i + 1] = d;
+                updated[2 * i + 1] = new Cell(d.qty + amts[i]);
+            }
+            sortByIndex(indices, expected, updated);
+
+            Descriptor desc = new Descriptor(indices, expected, updated);
+            if (help(desc)) return true;
+            // some cell changed since we read it, re-read and retry
+            if (freezing) Thread.yield();
+        }
+    }
+
+    // Drives a descriptor to completion; safe to call from any number of threads.
+    private boolean help(Descriptor desc) {
+        if (desc.status.get() == UNDECIDED) {
+            int decision = SUCCEEDED;
+            outer:
+            for (int i = 0; i < desc.indices.length; ++i) {
+                int idx = desc.indices[i];
+                while (true) {
+                    if (desc.status.get() != UNDECIDED) break outer;
+                    Object cur = cells.get(idx);
+                    if (cur == desc) break;
+                    if (cur instanceof Descriptor) {
+                        help((Descriptor) cur);
+                        continue;
+                    }
+                    if (cur != desc.expected[i]) {
+                        decision = FAILED;
+                        break outer;
+                    }
+                    if (cells.compareAndSet(idx, cur, desc)) break;
+                }
+            }
+            desc.status.compareAndSet(UNDECIDED, decision);
+        }
+
+        boolean succeeded = desc.status.get() == SUCCEEDED;
+        for (int i = 0; i < desc.indices.length; ++i) {
+            cells.compareAndSet(desc.indices[i], desc, succeeded ? desc.updated[i] : desc.expected[i]);
+        }
+        return succeeded;
+    }
+
+    // Inventory copy from two identical collects of all cells. Under a steady stream of moves the
+    // collects may never agree, so after SNAPSHOT_COLLECTS attempts it takes a blocking one.
+    public int[][] snapshot() {
+        Cell[] first = new Cell[W * P];
+        Cell[] second = new Cell[W * P];
+        for (int i = 0; i < first.length; ++i) first[i] = readCell(i);
+        for (int attempt = 0; attempt < SNAPSHOT_COLLECTS; ++attempt) {
+            boolean same = true;
+            for (int i = 0; i < second.length; ++i) {
+                second[i] = readCell(i);
+                if (second[i] != first[i]) same = false;
+            }
+            if (same) return toInventory(first);
+            Cell[] t = first;
+            first = second;
+            second = t;
+        }
+        fallbacks.incrementAndGet();
+        return frozenSnapshot();
+    }
+
+    // Freezes every cell in index order (finishing any move found on the way), so once the last
+    // cell is frozen no move is half applied and none can start; then reads and releases them.
+    private int[][] frozenSnapshot() {
+        synchronized (freezeLock) {
+            freezing = true;
+            Frozen[] held = new Frozen[W * P];
+            try {
+                for (int i = 0; i < held.length; ++i) {
+                    while (true) {
+                        Object cur = cells.get(i);
+                        if (cur instanceof Descriptor) {
+                            help((Descriptor) cur);
+                            continue;
+                        }
+                        Frozen f = new Frozen((Cell) cur);
+                        if (cells.compareAndSet(i, cur, f)) {
+                            held[i] = f;
+                            break;
+                        }
+                    }
+                }
+                Cell[] snap = new Cell[held.length];
+                for (int i = 0; i < held.length; ++i) snap[i] = held[i].cell;
+                return toInventory(snap);
+            } finally {
+                // the cell values did not change, so movers that read them before the freeze may still succeed
+                for (int i = 0; i < held.length && held[i] != null; ++i) cells.set(i, held[i].cell);
+                freezing = false;
+            }
+        }
+    }
+
+    private int[][] toInventory(Cell[] snap) {
+        int[][] copy = new int[W][P];
+        for (int w = 0; w < W; ++w)
+            for (int p = 0; p < P; ++p)
+                copy[w][p] = snap[w * P + p].qty;
+        return copy;
+    }
+
+    private static void sortByIndex(int[] indices, Cell[] expected, Cell[] updated) {
+        // moves touch at most a handful of cells: insertion sort, no boxing
+        for (int i = 1; i < indices.length; ++i) {
+            int idx = indices[i];
+            Cell e = expected[i], u = updated[i];
+            int j = i - 1;
+            while (j >= 0 && indices[j] > idx) {
+                indices[j + 1] = indices[j];
+                expected[j + 1] = expected[j];
+                updated[j + 1] = updated[j];
+                --j;
+            }
+            indices[j + 1] = idx;
+            expected[j + 1] = e;
+            updated[j + 1] = u;
+        }
+    }
+}
@@ -1,5 +1,10 @@
 public enum LockGranularity {
     GLOBAL,
     WAREHOUSE,
-    PRODUCT
+    PRODUCT,
+    OPTIMISTIC,
+    LOCK_FREE,
+    STRIPED,
+    ACTOR,
+    ADAPTIVE
 }
\ No newline at end of file
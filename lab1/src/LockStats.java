@@ -0,0 +1,91 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Contention statistics of one family of locks (all warehouse locks, all product locks, ...):
+// wait and hold time histograms for the family plus per-lock acquisition, contention and
+// wait/hold totals. Everything is skipped while the owning Instrumentation is switched off.
+public class LockStats {
+    // per-lock counters sit STRIDE longs apart so neighbouring locks don't share a cache line
+    static final int STRIDE = 8;
+    static final int ACQUIRED = 0, CONTENDED = 1, WAIT_NANOS = 2, HOLD_NANOS = 3, HOLD_START = 4;
+
+    final String name;
+    final Instrumentation owner;
+    final int locks;
+    final LatencyHistogram waitNanos = LatencyHistogram.shared();
+    final LatencyHistogram holdNanos = LatencyHistogram.shared();
+    private final AtomicLongArray perLock;
+
+    LockStats(String name, Instrumentation owner, int locks) {
+        this.name = name;
+        this.owner = owner;
+        this.locks = locks;
+        this.perLock = new AtomicLongArray(Math.max(1, locks) * STRIDE);
+    }
+
+    boolean enabled() {
+        return owner.enabled;
+    }
+
+    // Lock `lock` was acquired after waiting `waited` nanos; exclusive acquisitions start a hold
+    void acquired(int lock, long waited, boolean exclusive) {
+        int base = lock * STRIDE;
+        perLock.incrementAndGet(base + ACQUIRED);
+        if (waited > 0) {
+            perLock.incrementAndGet(base + CONTENDED);
+            perLock.addAndGet(base + WAIT_NANOS, waited);
+        }
+        waitNanos.record(waited);
+        if (exclusive) perLock.set(base + HOLD_START, System.nanoTime());
+    }
+
+    // Exclusive hold of `lock` ends
+    void released(int lock) {
+        int base = lock * STRIDE;
+        long start = perLock.get(base + HOLD_START);
+        if (start == 0) return; // acquired while instrumentation was off
+        perLock.set(base + HOLD_START, 0);
+        long held = System.nanoTime() - start;
+        perLock.addAndGet(base + HOLD_NANOS, held);
+        holdNanos.record(held);
+    }
+
+    public long acquisitions() {
+        return sum(ACQUIRED);
+    }
+
+    public long contended() {
+        return sum(CONTENDED);
+    }
+
+    public long totalWaitNanos() {
+        return sum(WAIT_NANOS);
+    }
+
+    public long totalHoldNanos() {
+        return sum(HOLD_NANOS);
+    }
+
+    public long contended(int lock) {
+        return perLock.get(lock * STRIDE + CONTENDED);
+    }
+
+    // Index of the lock that was contended most often, -1 if none was
+    public int hottestLock() {
+        int best = -1;
+        long most = 0;
+        for (int l = 0; l < locks; ++l) {
+            long c = contended(l);
+            if (c > most) {
+                most = c;
+                best = l;
+            }
+        }
+        return best;
+    }
+
+    private long sum(int field) {
+        long s = 0;
+        for (int l = 0; l < locks; ++l) s += perLock.get(l * STRIDE + field);
+        return s;
+    }
+}
@@ -0,0 +1,82 @@
+import java.util.Arrays;
+import java.util.Map;
+
+// Primitive, reusable description of a move: products[i] moves amounts[i] units. Products are
+// kept sorted ascending and unique, so lock-ordered modes can use them directly. A worker keeps
+// one instance and clear()s it between moves, so the steady state allocates nothing.
+public class MoveDescriptor {
+    int[] products;
+    int[] amounts;
+    int size;
+    // scratch filled by WarehouseSystem with the lock ids this move needs, in acquisition order
+    int[] lockIds = new int[8];
+    // sequence number the write-ahead log gave this move while its locks were held; -1 when none
+    long seq = -1;
+
+    public MoveDescriptor() {
+        this(4);
+    }
+
+    public MoveDescriptor(int capacity) {
+        this.products = new int[Math.max(1, capacity)];
+        this.amounts = new int[Math.max(1, capacity)];
+    }
+
+    public static MoveDescriptor of(Map<Integer, Integer> moves) {
+        MoveDescriptor d = new MoveDescriptor(moves.size());
+        d.copyFrom(moves);
+        return d;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void copyFrom(Map<Integer, Integer> moves) {
+        clear();
+        for (Map.Entry<Integer, Integer> e : moves.entrySet()) add(e.getKey(), e.getValue());
+    }
+
+    // Adds amount of product, summing with an existing entry for the same product
+    public void add(int product, int amount) {
+        int i = size - 1;
+        while (i >= 0 && products[i] > product) --i;
+        if (i >= 0 && products[i] == product) {
+            amounts[i] += amount;
+            return;
+        }
+
+        if (size == products.length) {
+            products = Arrays.copyOf(products, 2 * size);
+            amounts = Arrays.copyOf(amounts, 2 * size);
+        }
+        // shift the tail right to keep products sorted
+        int at = i + 1;
+        System.arraycopy(products, at, products, at + 1, size - at);
+        System.arraycopy(amounts, at, amounts, at + 1, size - at);
+        products[at] = product;
+        amounts[at] = amount;
+        ++size;
+    }
+
+    int[] lockIds(int capacity) {
+        if (lockIds.length < capacity) lockIds = new int[Math.max(capacity, 2 * lockIds.length)];
+        return lockIds;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int product(int i) {
+        return products[i];
+    }
+
+    public int amount(int i) {
+        return amounts[i];
+    }
+}
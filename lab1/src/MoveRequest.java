@@ -0,0 +1,29 @@
+import java.util.Map;
+
+// One transfer of a moveBatch() call: move the products in moves from source to dest.
+// Mutable so a worker can pool its requests and reuse them batch after batch.
+public class MoveRequest {
+    int source;
+    int dest;
+    final MoveDescriptor moves;
+
+    public MoveRequest(int source, int dest, Map<Integer, Integer> moves) {
+        this(source, dest, MoveDescriptor.of(moves));
+    }
+
+    public MoveRequest(int source, int dest, MoveDescriptor moves) {
+        this.source = source;
+        this.dest = dest;
+        this.moves = moves;
+    }
+
+    public MoveRequest() {
+        this(0, 0, new MoveDescriptor());
+    }
+
+    public void reset(int source, int dest) {
+        this.source = source;
+        this.dest = dest;
+        moves.clear();
+    }
+}
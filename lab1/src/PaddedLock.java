@@ -0,0 +1,12 @@
+// InstrumentedLock followed by a cache line of padding. Locks created one after another in an array
+// are laid out lock, sync, lock, sync...; the padding keeps each lock's sync state (the word
+// that is actually CASed) off the cache line of its neighbour's.
+@SuppressWarnings("serial") // never serialized
+public class PaddedLock extends InstrumentedLock {
+    @SuppressWarnings("unused")
+    private long p1, p2, p3, p4, p5, p6, p7, p8;
+
+    public PaddedLock(LockStats stats, int index) {
+        super(stats, index);
+    }
+}
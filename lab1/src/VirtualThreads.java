@@ -0,0 +1,49 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+// Virtual threads when the running JDK has them (21+), daemon platform threads otherwise. The
+// project compiles against an older language level, so the JDK 21 API is reached reflectively.
+public final class VirtualThreads {
+    private static final ThreadFactory FACTORY = createFactory();
+
+    private VirtualThreads() {
+    }
+
+    public static boolean available() {
+        return FACTORY != null;
+    }
+
+    public static Thread start(Runnable task) {
+        Thread t;
+        if (FACTORY != null) {
+            t = FACTORY.newThread(task);
+        } else {
+            t = new Thread(task);
+            t.setDaemon(true);
+        }
+        t.start();
+        return t;
+    }
+
+    // Unbounded executor: every task that finds no idle thread gets a new one
+    public static ExecutorService newPerTaskExecutor() {
+        if (FACTORY != null) return Executors.newCachedThreadPool(FACTORY);
+        return Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static ThreadFactory createFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
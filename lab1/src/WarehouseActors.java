@@ -0,0 +1,256 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Engine of the ACTOR mode: each warehouse is owned by one actor whose mailbox is drained by a
+// single (virtual, when available) thread, and only that thread ever writes the warehouse's row.
+// A move is two messages: the source actor checks and debits the stock, then hands a deposit to
+// the destination actor, which credits it and completes the caller's future.
+public class WarehouseActors {
+    static final class Withdraw {
+        final int dest;
+        final MoveDescriptor moves;
+        final CompletableFuture<Boolean> done;
+
+        Withdraw(int dest, MoveDescriptor moves, CompletableFuture<Boolean> done) {
+            this.dest = dest;
+            this.moves = moves;
+            this.done = done;
+        }
+    }
+
+    static final class Deposit {
+        final MoveDescriptor moves;
+        final CompletableFuture<Boolean> done;
+
+        Deposit(MoveDescriptor moves, CompletableFuture<Boolean> done) {
+            this.moves = moves;
+            this.done = done;
+        }
+    }
+
+    // Parks the actor until the auditor has read every actor's state; only used when optimistic
+    // snapshots keep failing
+    static final class Pause {
+        final CountDownLatch arrived;
+        final CountDownLatch resume;
+
+        Pause(CountDownLatch arrived, CountDownLatch resume) {
+            this.arrived = arrived;
+            this.resume = resume;
+        }
+    }
+
+    static final Object STOP = new Object();
+
+    final class Actor implements Runnable {
+        final int id;
+        final int[] stock;       // inventory[id]
+        final long[][] sentTo;   // sentTo[d][p]: units of p withdrawn here on their way to d
+        final long[] received;   // received[p]: units of p deposited here
+        final LinkedTransferQueue<Object> mailbox = new LinkedTransferQueue<>();
+        // Seqlock over the fields above: odd while the actor is changing them
+        volatile long version;
+        // Withdrawals so far, bumped inside the write section before the move gets its sequence number
+        volatile long withdrawals;
+
+        Actor(int id) {
+            this.id = id;
+            this.stock = inventory[id];
+            this.sentTo = new long[W][P];
+            this.received = new long[P];
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Object msg = mailbox.take();
+                    if (msg == STOP) return;
+                    if (msg instanceof Withdraw) withdraw((Withdraw) msg);
+                    else if (msg instanceof Deposit) deposit((Deposit) msg);
+                    else if (msg instanceof Pause) pause((Pause) msg);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void withdraw(Withdraw w) {
+            MoveDescriptor moves = w.moves;
+            for (int i = 0; i < moves.size; ++i) {
+                int amt = moves.amounts[i];
+                if (amt < 0 || stock[moves.products[i]] < amt) {
+                    w.done.complete(false);
+                    return;
+                }
+            }
+            beginWrite();
+            withdrawals = withdrawals + 1;
+            long[] inFlight = sentTo[w.dest];
+            for (int i = 0; i < moves.size; ++i) {
+                stock[moves.products[i]] -= moves.amounts[i];
+                inFlight[moves.products[i]] += moves.amounts[i];
+            }
+            // the withdrawal is where the move takes effect, snapshots count it from here on
+            WriteAheadLog log = wal;
+            if (log != null) moves.seq = log.nextSeq();
+            endWrite();
+            // the caller waits for the future, so the descriptor stays untouched until then
+            actors[w.dest].mailbox.add(new Deposit(moves, w.done));
+        }
+
+        private void deposit(Deposit d) {
+            MoveDescriptor moves = d.moves;
+            beginWrite();
+            for (int i = 0; i < moves.size; ++i) {
+                stock[moves.products[i]] += moves.amounts[i];
+                received[moves.products[i]] += moves.amounts[i];
+            }
+            endWrite();
+            d.done.complete(true);
+        }
+
+        private void pause(Pause p) throws InterruptedException {
+            p.arrived.countDown();
+            p.resume.await();
+        }
+
+        // only the actor's own thread writes, so plain increments of version are enough
+        private void beginWrite() {
+            VERSION.setOpaque(this, version + 1);
+            VarHandle.storeStoreFence();
+        }
+
+        private void endWrite() {
+            VERSION.setRelease(this, version + 1);
+        }
+    }
+
+    private static final VarHandle VERSION;
+
+    static {
+        try {
+            VERSION = MethodHandles.lookup().findVarHandle(Actor.class, "version", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    static final int SNAPSHOT_ATTEMPTS = 16; // optimistic snapshot attempts before pausing the actors
+
+    final int W;
+    final int P;
+    final int[][] inventory;
+    final Actor[] actors;
+    volatile WriteAheadLog wal; // set when the system is made durable
+    final AtomicLong fallbacks = new AtomicLong(); // snapshots that had to pause the actors
+
+    public WarehouseActors(int[][] inventory, int warehouses, int products) {
+        this.W = warehouses;
+        this.P = products;
+        this.inventory = inventory;
+        this.actors = new Actor[W];
+        for (int w = 0; w < W; ++w) actors[w] = new Actor(w);
+        for (Actor a : actors) VirtualThreads.start(a);
+    }
+
+    public boolean move(int source, int dest, MoveDescriptor moves) {
+        CompletableFuture<Boolean> done = new CompletableFuture<>();
+        actors[source].mailbox.add(new Withdraw(dest, moves, done));
+        return done.join();
+    }
+
+    // Consistent copy of the inventory, read without stopping the actors: withdrawn units whose
+    // deposit is still queued are counted at their destination. Audits are serialized so two
+    // fallback pauses can never park the actors in different orders. A pass reads every actor's
+    // W x P sentTo table. Once W * W * P reaches a few million, a withdrawal nearly always lands
+    // inside the pass under steady load, so those audits pause the actors (counted in fallbacks).
+    public int[][] snapshot() {
+        return snapshot(null);
+    }
+
+    // Same, also storing in seq[0] how many sequence numbers the log had handed out at that point
+    synchronized int[][] snapshot(long[] seq) {
+        for (int attempt = 0; attempt < SNAPSHOT_ATTEMPTS; ++attempt) {
+            int[][] copy = tryReadSnapshot(seq);
+            if (copy != null) return copy;
+            Thread.yield();
+        }
+        fallbacks.incrementAndGet();
+        return pausedSnapshot(seq);
+    }
+
+    // Reads each actor's state under its seqlock, then checks that no actor withdrew anything
+    // since it was read. Deposits do not matter: they raise stock and received by the same
+    // amount, so the sum below is unchanged by them. So if the check passes, the sum is the
+    // inventory as of the moment the first pass ended. Null when an actor was mid-write or
+    // withdrew in the meantime.
+    private int[][] tryReadSnapshot(long[] seq) {
+        long[][] acc = new long[W][P];
+        long[] own = new long[P];
+        long[][] sent = new long[W][P];
+        long[] seen = new long[W];
+        for (int w = 0; w < W; ++w) {
+            Actor a = actors[w];
+            long v = a.version;
+            if ((v & 1) != 0) return null;
+            for (int p = 0; p < P; ++p) own[p] = a.stock[p] - a.received[p];
+            for (int d = 0; d < W; ++d) System.arraycopy(a.sentTo[d], 0, sent[d], 0, P);
+            seen[w] = a.withdrawals;
+            VarHandle.acquireFence();
+            if (a.version != v) return null;
+            // per cell: stock - deposits received + units withdrawn towards it by anyone
+            for (int p = 0; p < P; ++p) acc[w][p] += own[p];
+            for (int d = 0; d < W; ++d)
+                for (int p = 0; p < P; ++p)
+                    acc[d][p] += sent[d][p];
+        }
+        WriteAheadLog log = wal;
+        if (seq != null) seq[0] = log == null ? 0 : log.currentSeq();
+        for (int w = 0; w < W; ++w) if (actors[w].withdrawals != seen[w]) return null;
+        return toInventory(acc);
+    }
+
+    // Stop-the-world fallback: every actor is parked at a Pause message while its state is read
+    private int[][] pausedSnapshot(long[] seq) {
+        CountDownLatch arrived = new CountDownLatch(W);
+        CountDownLatch resume = new CountDownLatch(1);
+        Pause pause = new Pause(arrived, resume);
+        for (Actor a : actors) a.mailbox.add(pause);
+        try {
+            arrived.await();
+            WriteAheadLog log = wal;
+            if (seq != null) seq[0] = log == null ? 0 : log.currentSeq();
+            long[][] acc = new long[W][P];
+            for (int w = 0; w < W; ++w)
+                for (int p = 0; p < P; ++p)
+                    acc[w][p] = actors[w].stock[p] - actors[w].received[p];
+            for (Actor a : actors)
+                for (int d = 0; d < W; ++d)
+                    for (int p = 0; p < P; ++p)
+                        acc[d][p] += a.sentTo[d][p];
+            return toInventory(acc);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while auditing actors", e);
+        } finally {
+            resume.countDown();
+        }
+    }
+
+    private int[][] toInventory(long[][] acc) {
+        int[][] copy = new int[W][P];
+        for (int w = 0; w < W; ++w)
+            for (int p = 0; p < P; ++p)
+                copy[w][p] = (int) acc[w][p];
+        return copy;
+    }
+
+    public void shutdown() {
+        for (Actor a : actors) a.mailbox.add(STOP);
+    }
+}
@@ -0,0 +1,150 @@
+import java.io.BufferedReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Steady-state throughput benchmark, run the way JMH runs one: every configuration gets `forks`
+// fresh JVMs, each of which builds one WarehouseSystem, runs `warmup` untimed iterations and then
+// `iterations` measured ones; the score is the mean ops/s over all measured iterations of all
+// forks. Unlike WarehouseSimulation's single cold runs, JIT compilation, class loading and the
+// initial stock layout are out of the numbers, and fork-to-fork noise shows up in the error.
+//
+//   java WarehouseBench [forks] [warmup] [iterations]
+public class WarehouseBench {
+    // ------------------ Configuration / entrypoint ------------------
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("fork")) {
+            runFork(args);
+            return;
+        }
+        int forks = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int warmup = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        int[][] sizes = {{8, 100}, {16, 500}}; // {warehouses, products}
+        int[] threads = {1, 4, 16};
+        int opsPerIteration = 20000;           // per thread
+        String[] profiles = {"uniform", "zipf", "zipf-hotpairs", "zipf-readheavy"};
+        LockGranularity[] granularities = LockGranularity.values();
+
+        String outputFile = "bench.csv";
+        try (FileWriter writer = new FileWriter(outputFile)) {
+            String header = "granularity,numWarehouses,numProducts,numThreads,profile,forks,iterations"
+                    + ",opsPerSec,error,min,max";
+            writer.write(header + "\n");
+            System.out.println(header);
+
+            for (LockGranularity gran : granularities) {
+                for (int[] size : sizes) {
+                    for (int t : threads) {
+                        for (String profile : profiles) {
+                            String[] config = {gran.name(), Integer.toString(size[0]), Integer.toString(size[1]),
+                                    Integer.toString(t), profile, Integer.toString(warmup),
+                                    Integer.toString(iterations), Integer.toString(opsPerIteration)};
+                            List<Double> scores = new ArrayList<>();
+                            for (int f = 0; f < forks; ++f) scores.addAll(fork(config));
+                            if (forks == 0) scores.addAll(measure(config)); // in-process, for debugging
+
+                            String row = String.format("%s,%d,%d,%d,%s,%d,%d", gran, size[0], size[1], t,
+                                    profile, forks, iterations) + summarize(scores);
+                            writer.write(row + "\n");
+                            System.out.println(row);
+                            writer.flush();
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing CSV: " + e.getMessage());
+        }
+
+        System.out.println("Benchmark complete. Results saved to " + outputFile);
+    }
+
+    // Runs one configuration in a child JVM and collects the scores it prints
+    private static List<Double> fork(String[] config) throws IOException, InterruptedException {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(ProcessHandle.current().info().command().orElse("java"));
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add(WarehouseBench.class.getName());
+        cmd.add("fork");
+        for (String c : config) cmd.add(c);
+
+        Process child = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+        List<Double> scores = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(child.getInputStream()))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("score ")) scores.add(Double.parseDouble(line.substring(6)));
+                else System.err.println("  [fork] " + line);
+            }
+        }
+        if (child.waitFor() != 0) throw new IllegalStateException("benchmark fork failed: " + String.join(" ", config));
+        return scores;
+    }
+
+    private static void runFork(String[] args) throws Exception {
+        String[] config = new String[args.length - 1];
+        System.arraycopy(args, 1, config, 0, config.length);
+        for (double score : measure(config)) System.out.println("score " + score);
+    }
+
+    // config: granularity, warehouses, products, threads, profile, warmup, iterations, opsPerIteration
+    private static List<Double> measure(String[] config) throws Exception {
+        LockGranularity gran = LockGranularity.valueOf(config[0]);
+        int w = Integer.parseInt(config[1]);
+        int p = Integer.parseInt(config[2]);
+        int t = Integer.parseInt(config[3]);
+        Workload workload = Workload.profile(config[4], w, p);
+        int warmup = Integer.parseInt(config[5]);
+        int iterations = Integer.parseInt(config[6]);
+        int ops = Integer.parseInt(config[7]);
+
+        List<Double> scores = new ArrayList<>();
+        try (WarehouseSystem system = new WarehouseSystem(w, p, gran)) {
+            ExecutorService ex = Executors.newFixedThreadPool(t);
+            try {
+                for (int i = 0; i < warmup + iterations; ++i) {
+                    List<Future<Integer>> futures = new ArrayList<>();
+                    long start = System.nanoTime();
+                    for (int k = 0; k < t; ++k) {
+                        // a new seed per iteration so iterations don't replay the same moves
+                        futures.add(ex.submit(new Worker(system, ops, 0xC0FFEE + 1000L * i + k, 1,
+                                null, null, workload)));
+                    }
+                    for (Future<Integer> f : futures) f.get();
+                    long end = System.nanoTime();
+                    if (i >= warmup) scores.add((double) t * ops / ((end - start) / 1e9));
+                }
+            } finally {
+                ex.shutdownNow();
+            }
+            if (!system.checkInvariants()) throw new IllegalStateException("invariant violated");
+            // otherwise the hot moves were skipped and the scores count no-ops
+            if (!workload.hotPairsStocked(system)) throw new IllegalStateException("hot pairs ran out of stock");
+        }
+        return scores;
+    }
+
+    // ",mean,error,min,max" where error is the half-width of a 99.9% confidence interval (normal approximation)
+    private static String summarize(List<Double> scores) {
+        int n = scores.size();
+        double mean = 0, min = Double.MAX_VALUE, max = 0;
+        for (double s : scores) {
+            mean += s;
+            min = Math.min(min, s);
+            max = Math.max(max, s);
+        }
+        mean /= n;
+        double var = 0;
+        for (double s : scores) var += (s - mean) * (s - mean);
+        double error = n > 1 ? 3.291 * Math.sqrt(var / (n - 1)) / Math.sqrt(n) : Double.NaN;
+        return String.format(",%.1f,%.1f,%.1f,%.1f", mean, error, min, max);
+    }
+}
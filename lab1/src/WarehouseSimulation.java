@@ -1,53 +1,121 @@
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Path;
 
+// One cold run per configuration of the sweep below, written to results.csv. By default a
+// representative subset (104 runs, about 9x faster); "full" runs the whole grid (1800 runs plus
+// 16 many-worker ones).
+//
+//   java WarehouseSimulation [full]
 public class WarehouseSimulation {
     // ------------------ Configuration / entrypoint ------------------
     public static void main(String[] args) throws Exception {
-        int[] warehouses = {4, 8, 16};
-        int[] products = {100, 500};
-        int[] threads = {1, 2, 4, 8};
-        int[] ops = {5000, 20000};
+        boolean full = args.length > 0 && args[0].equals("full");
+        int[] warehouses = full ? new int[]{4, 8, 16} : new int[]{4, 16};
+        int[] products = full ? new int[]{100, 500} : new int[]{500};
+        int[] threads = full ? new int[]{1, 2, 4, 8, 16} : new int[]{1, 4, 16};
+        int[] ops = full ? new int[]{5000, 20000} : new int[]{20000};
+        int[] batchSizes = full ? new int[]{1, 64, 1024} : new int[]{1, 64};
+        int[] stripeCounts = full ? new int[]{16, 64, 256} : new int[]{64}; // only swept for STRIPED
         LockGranularity[] granularities = {
                 LockGranularity.GLOBAL,
                 LockGranularity.WAREHOUSE,
-                LockGranularity.PRODUCT
+                LockGranularity.PRODUCT,
+                LockGranularity.OPTIMISTIC,
+                LockGranularity.LOCK_FREE,
+                LockGranularity.STRIPED,
+                LockGranularity.ACTOR,
+                LockGranularity.ADAPTIVE
         };
 
+        // workers far beyond the core count, one (virtual) thread each
+        int[] manyWorkers = full ? new int[]{1000, 10000} : new int[]{1000};
+        int manyWorkersOps = 200;
+
+        // fill the lock wait/hold and per-op latency columns from a second, instrumented pass of
+        // each configuration; the seconds column always comes from an uninstrumented pass
+        boolean instrument = false;
+
+        // directory for a write-ahead log to run every (non LOCK_FREE) configuration durably; null = in memory
+        Path walDir = null;
+
         String outputFile = "results.csv";
 
         try (FileWriter writer = new FileWriter(outputFile)) {
-            writer.write("granularity,numWarehouses,numProducts,numThreads,opsPerThread,seconds\n");
-            System.out.println("granularity,numWarehouses,numProducts,numThreads,opsPerThread,seconds");
+            String header = "granularity,numWarehouses,numProducts,numThreads,opsPerThread,batchSize,stripes,virtualWorkers,seconds"
+                    + ",opP50us,opP99us,opP999us,lockAcquired,lockContended,lockWaitMs,lockHoldMs,waitP99us,holdP99us"
+                    + ",audits,auditMs,auditFallbacks,durable";
+            writer.write(header + "\n");
+            System.out.println(header);
 
             for (LockGranularity gran : granularities) {
-                for (int w : warehouses) {
-                    for (int p : products) {
-                        for (int t : threads) {
-                            for (int o : ops) {
-                                WarehouseSystem system = new WarehouseSystem(w, p, gran);
-
-                                Benchmark bench = new Benchmark(system, t, o);
-
-                                long start = System.nanoTime();
-                                bench.runAll();
-                                long end = System.nanoTime();
-
-                                double seconds = (end - start) / 1e9;
-                                writer.write(String.format("%s,%d,%d,%d,%d,%.3f\n",
-                                        gran, w, p, t, o, seconds));
-                                System.out.printf("%s,%d,%d,%d,%d,%.3f\n",
-                                        gran, w, p, t, o, seconds);
-                                writer.flush();
+                int[] stripeSweep = gran == LockGranularity.STRIPED ? stripeCounts : new int[]{0};
+                for (int st : stripeSweep) {
+                    for (int w : warehouses) {
+                        for (int p : products) {
+                            for (int t : threads) {
+                                for (int o : ops) {
+                                    for (int bs : batchSizes) {
+                                        runOne(writer, gran, w, p, t, o, bs, st, false, instrument, walDir);
+                                    }
+                                }
                             }
                         }
                     }
                 }
             }
+
+            for (LockGranularity gran : granularities) {
+                for (int t : manyWorkers) {
+                    runOne(writer, gran, 16, 500, t, manyWorkersOps, 1, 0, true, instrument, walDir);
+                }
+            }
         } catch (IOException e) {
             System.err.println("Error writing CSV: " + e.getMessage());
         }
 
         System.out.println("Benchmark complete. Results saved to results.csv");
     }
+
+    private static void runOne(FileWriter writer, LockGranularity gran, int w, int p, int t, int o,
+                               int bs, int st, boolean virtualWorkers, boolean instrument, Path walDir)
+            throws Exception {
+        boolean durable = walDir != null && gran != LockGranularity.LOCK_FREE;
+        double seconds = 0;
+        long fallbacks = 0; // audits of the timed pass that stopped the movers (see snapshotFallbacks)
+        Benchmark bench = null;
+        Instrumentation in = null;
+        for (boolean instrumented : instrument ? new boolean[]{false, true} : new boolean[]{false}) {
+            try (WarehouseSystem system = st > 0
+                    ? new WarehouseSystem(w, p, gran, st)
+                    : new WarehouseSystem(w, p, gran)) {
+
+                system.instrumentation.setEnabled(instrumented);
+                if (durable) system.enablePersistence(walDir, 0);
+                bench = new Benchmark(system, t, o, bs, virtualWorkers);
+
+                long start = System.nanoTime();
+                bench.runAll();
+                long end = System.nanoTime();
+
+                if (!instrumented) {
+                    seconds = (end - start) / 1e9;
+                    fallbacks = system.snapshotFallbacks();
+                }
+                in = system.instrumentation;
+            }
+        }
+
+        String row = String.format("%s,%d,%d,%d,%d,%d,%d,%b,%.3f", gran, w, p, t, o, bs, st, virtualWorkers, seconds)
+                + String.format(",%.3f,%.3f,%.3f", bench.opLatency.percentile(0.50) / 1e3,
+                bench.opLatency.percentile(0.99) / 1e3, bench.opLatency.percentile(0.999) / 1e3)
+                + String.format(",%d,%d,%.3f,%.3f,%.3f,%.3f", in.acquisitions(), in.contended(),
+                in.totalWaitNanos() / 1e6, in.totalHoldNanos() / 1e6,
+                in.waitNanos().percentile(0.99) / 1e3, in.holdNanos().percentile(0.99) / 1e3)
+                + String.format(",%d,%.3f,%d,%b", bench.auditLatency.count(), bench.auditLatency.total() / 1e6,
+                fallbacks, durable);
+        writer.write(row + "\n");
+        System.out.println(row);
+        writer.flush();
+    }
 }
@@ -1,54 +1,152 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.VarHandle;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
 
-public class WarehouseSystem {
+public class WarehouseSystem implements AutoCloseable {
     final int W; // warehouses
     final int P; // products
     final LockGranularity granularity;
 
     // inventory[w][p] == quantity of product p in warehouse w
+    // (in LOCK_FREE mode the live quantities are in lockFree, inventory keeps the initial stock)
     final int[][] inventory;
+    final LockFreeInventory lockFree; // only in LOCK_FREE mode
+    final WarehouseActors actors;     // only in ACTOR mode, owns the inventory rows
 
-    // Locks
-    final ReentrantLock globalLock = new ReentrantLock();
+    // Locks, reporting to instrumentation when it is switched on
+    final Instrumentation instrumentation;
+    final ReentrantLock globalLock;
     final ReentrantLock[] warehouseLocks; // length W
     final ReentrantLock[] productLocks;   // length P
+    final StampedLock[] stampedLocks;     // length W, used by OPTIMISTIC
+    final ReentrantLock[] stripeLocks;    // length stripes, used by STRIPED and ADAPTIVE
+    final AdaptiveRegion[] regions;       // length W, used by ADAPTIVE
+    final int stripes;
+
+    static final int DEFAULT_STRIPES = 64;
+    // spare ints after each inventory row so rows written by different movers don't share a line
+    static final int ROW_PADDING = 16;
+
+    // optimistic reads retried this many times before falling back to a read lock
+    static final int OPTIMISTIC_RETRIES = 4;
+
+    // Per-warehouse write counters used by snapshot(): a mover bumps writesBegun of both its
+    // warehouses before touching them and writesEnded after. Counters sit COUNTER_STRIDE longs
+    // apart so each one has its own cache line.
+    static final int COUNTER_STRIDE = 16;
+    static final int SNAPSHOT_RETRIES = 64;
+    final AtomicLongArray writesBegun;
+    final AtomicLongArray writesEnded;
+    final AtomicLong snapshotFallbacks = new AtomicLong(); // snapshots that had to take the locks
+
+    // moveBatch() locks at most this many products/stripes (PRODUCT, STRIPED) or warehouses
+    // (WAREHOUSE, OPTIMISTIC, ADAPTIVE) per group
+    static final int BATCH_LOCK_SET = 256;
+    static final int BATCH_WAREHOUSE_SET = 8;
+
+    // scratch descriptor for callers of the Map based move()
+    private static final ThreadLocal<MoveDescriptor> SCRATCH = ThreadLocal.withInitial(MoveDescriptor::new);
 
     // initial totals for invariant check
     final long[] initialTotals; // per-product total
 
+    // Persistence, once enablePersistence() or recover() attached a log: every successful move is
+    // logged and acknowledged only when durable; checkpoints are taken every checkpointMillis
+    volatile WriteAheadLog wal;
+    private ScheduledExecutorService checkpointer;
+
     final Random rng = new Random(0xC0FFEE);
 
     public WarehouseSystem(int warehouses, int products, LockGranularity granularity) {
+        this(warehouses, products, granularity, DEFAULT_STRIPES);
+    }
+
+    public WarehouseSystem(int warehouses, int products, LockGranularity granularity, int stripes) {
+        this(warehouses, products, granularity, stripes, null, null);
+    }
+
+    // initial == null draws a random stock; totals == null takes them from the initial stock
+    private WarehouseSystem(int warehouses, int products, LockGranularity granularity, int stripes,
+                            int[][] initial, long[] totals) {
+        if (stripes <= 0) throw new IllegalArgumentException("stripes must be positive");
         this.W = warehouses;
         this.P = products;
         this.granularity = granularity;
-        this.inventory = new int[W][P];
+        this.stripes = stripes;
+        this.inventory = new int[W][P + ROW_PADDING];
         this.warehouseLocks = new ReentrantLock[W];
         this.productLocks = new ReentrantLock[P];
-        for (int i = 0; i < W; ++i) warehouseLocks[i] = new ReentrantLock();
-        for (int j = 0; j < P; ++j) productLocks[j] = new ReentrantLock();
+        boolean striped = granularity == LockGranularity.STRIPED || granularity == LockGranularity.ADAPTIVE;
+        this.instrumentation = new Instrumentation(W, P, striped ? stripes : 0);
+        this.globalLock = new InstrumentedLock(instrumentation.global, 0);
+        for (int i = 0; i < W; ++i) warehouseLocks[i] = new InstrumentedLock(instrumentation.warehouse, i);
+        for (int j = 0; j < P; ++j) productLocks[j] = new InstrumentedLock(instrumentation.product, j);
+        this.stampedLocks = new StampedLock[W];
+        for (int i = 0; i < W; ++i) stampedLocks[i] = new StampedLock();
+        this.stripeLocks = new ReentrantLock[striped ? stripes : 0];
+        for (int i = 0; i < stripeLocks.length; ++i) stripeLocks[i] = new PaddedLock(instrumentation.stripe, i);
+        this.regions = new AdaptiveRegion[granularity == LockGranularity.ADAPTIVE ? W : 0];
+        for (int i = 0; i < regions.length; ++i) regions[i] = new AdaptiveRegion(instrumentation.warehouse, i);
+        this.writesBegun = new AtomicLongArray(W * COUNTER_STRIDE);
+        this.writesEnded = new AtomicLongArray(W * COUNTER_STRIDE);
 
         for (int i = 0; i < W; ++i) {
             for (int j = 0; j < P; ++j) {
                 // moderate initial stock
-                inventory[i][j] = 100 + rng.nextInt(50);
+                inventory[i][j] = initial != null ? initial[i][j] : 100 + rng.nextInt(50);
             }
         }
 
-        initialTotals = new long[P];
-        for (int p = 0; p < P; ++p) {
+        initialTotals = totals != null ? totals.clone() : new long[P];
+        for (int p = 0; p < P && totals == null; ++p) {
             long s = 0;
             for (int w = 0; w < W; ++w) s += inventory[w][p];
             initialTotals[p] = s;
         }
+
+        this.lockFree = granularity == LockGranularity.LOCK_FREE
+                ? new LockFreeInventory(inventory, W, P)
+                : null;
+        this.actors = granularity == LockGranularity.ACTOR
+                ? new WarehouseActors(inventory, W, P)
+                : null;
     }
 
 
     public boolean move(int source, int dest, Map<Integer, Integer> moves) {
+        MoveDescriptor d = SCRATCH.get();
+        d.copyFrom(moves);
+        return move(source, dest, d);
+    }
+
+    public boolean move(int source, int dest, MoveDescriptor moves) {
         if (source == dest) return true; // nothing to do
 
+        boolean ok = moveLocked(source, dest, moves);
+        // logged after the locks are gone, so nobody waits on them for the flush
+        if (moves.seq >= 0) {
+            long seq = moves.seq;
+            logMove(source, dest, moves);
+            wal.awaitDurable(seq);
+        }
+        return ok;
+    }
+
+    private boolean moveLocked(int source, int dest, MoveDescriptor moves) {
         switch (granularity) {
             case GLOBAL:
                 globalLock.lock();
@@ -70,68 +168,462 @@ public class WarehouseSystem {
                     warehouseLocks[a].unlock();
                 }
             case PRODUCT:
-                // lock products involved in ascending order
-                int[] prods = moves.keySet()
-                        .stream()
-                        .mapToInt(i->i)
-                        .sorted()
-                        .toArray();
+                // lock products involved in ascending order (the descriptor keeps them sorted)
+                for (int i = 0; i < moves.size; ++i) productLocks[moves.products[i]].lock();
+
+                try {
+                    return moveUnprotected(source, dest, moves);
+                } finally {
+                    for (int i = moves.size - 1; i >= 0; --i) productLocks[moves.products[i]].unlock();
+                }
+            case OPTIMISTIC:
+                // a move that cannot succeed is rejected without ever taking the write locks
+                if (!hasStockOptimistic(source, moves)) return false;
+                int lo = Math.min(source, dest);
+                int hi = Math.max(source, dest);
+                long loStamp = writeLockWarehouse(lo);
+                long hiStamp = writeLockWarehouse(hi);
+                try {
+                    // stock may have changed since the optimistic check, moveUnprotected re-verifies it
+                    return moveUnprotected(source, dest, moves);
+                } finally {
+                    unlockWriteWarehouse(hi, hiStamp);
+                    unlockWriteWarehouse(lo, loStamp);
+                }
+            case STRIPED:
+                // lock the stripes of all (source, p) and (dest, p) cells in ascending order
+                int n = stripeFootprint(source, dest, moves, true, true);
+                int[] ids = moves.lockIds;
+                for (int i = 0; i < n; ++i) stripeLocks[ids[i]].lock();
+                try {
+                    return moveUnprotected(source, dest, moves);
+                } finally {
+                    for (int i = n - 1; i >= 0; --i) stripeLocks[ids[i]].unlock();
+                }
+            case ADAPTIVE:
+                return moveAdaptive(source, dest, moves);
+            case LOCK_FREE:
+                return lockFree.move(source, dest, moves);
+            case ACTOR:
+                return actors.move(source, dest, moves);
+            default:
+                throw new IllegalStateException("Unknown granularity");
+        }
+    }
 
-                for (int p : prods) productLocks[p].lock();
+    // Stripe guarding cell (w, p); the multiplicative hash scatters both the products of one
+    // warehouse and the warehouses of one product over the stripes
+    int stripeOf(int w, int p) {
+        int h = (w * P + p) * 0x9E3779B9;
+        return (int) (((h ^ (h >>> 16)) & 0xFFFFFFFFL) % stripes);
+    }
+
+    // Fills moves.lockIds with the sorted, distinct stripes of the source and/or dest cells the
+    // move touches; returns their count
+    private int stripeFootprint(int source, int dest, MoveDescriptor moves, boolean withSource, boolean withDest) {
+        int[] ids = moves.lockIds(2 * moves.size);
+        int n = 0;
+        for (int i = 0; i < moves.size; ++i) {
+            if (withSource) n = insertSorted(ids, n, stripeOf(source, moves.products[i]));
+            if (withDest) n = insertSorted(ids, n, stripeOf(dest, moves.products[i]));
+        }
+        return n;
+    }
 
+    // ADAPTIVE: region locks of both warehouses in id order, each in its region's current mode,
+    // then the stripes of the cells that live in fine-mode regions, ascending
+    private boolean moveAdaptive(int source, int dest, MoveDescriptor moves) {
+        int lo = Math.min(source, dest);
+        int hi = Math.max(source, dest);
+        boolean loFine = regions[lo].acquire();
+        try {
+            boolean hiFine = regions[hi].acquire();
+            try {
+                boolean sourceFine = source == lo ? loFine : hiFine;
+                boolean destFine = dest == lo ? loFine : hiFine;
+                int n = stripeFootprint(source, dest, moves, sourceFine, destFine);
+                int[] ids = moves.lockIds;
+                for (int i = 0; i < n; ++i) {
+                    ReentrantLock l = stripeLocks[ids[i]];
+                    if (!l.tryLock()) {
+                        long t0 = System.nanoTime();
+                        l.lock();
+                        long waited = System.nanoTime() - t0;
+                        if (loFine) regions[lo].recordStripeWait(waited);
+                        if (hiFine) regions[hi].recordStripeWait(waited);
+                    }
+                }
                 try {
                     return moveUnprotected(source, dest, moves);
                 } finally {
-                    for (int i = prods.length - 1; i >= 0; --i) productLocks[prods[i]].unlock();
+                    for (int i = n - 1; i >= 0; --i) stripeLocks[ids[i]].unlock();
+                }
+            } finally {
+                regions[hi].release(hiFine);
+            }
+        } finally {
+            regions[lo].release(loFine);
+        }
+    }
+
+    // Number of ADAPTIVE regions currently locking per stripe rather than per warehouse
+    public int fineRegions() {
+        int n = 0;
+        for (AdaptiveRegion r : regions) if (r.fine) ++n;
+        return n;
+    }
+
+    // Total coarse <-> fine switches made by the ADAPTIVE regions
+    public long regionSwitches() {
+        long n = 0;
+        for (AdaptiveRegion r : regions) n += r.switches.get();
+        return n;
+    }
+
+    private static int insertSorted(int[] ids, int n, int id) {
+        int j = n - 1;
+        while (j >= 0 && ids[j] > id) --j;
+        if (j >= 0 && ids[j] == id) return n;
+        System.arraycopy(ids, j + 1, ids, j + 2, n - j - 1);
+        ids[j + 1] = id;
+        return n + 1;
+    }
+
+    // Applies many transfers, taking the union of a group's locks once for the whole group
+    // instead of each transfer's locks once per transfer. Requests of a group are applied in list
+    // order; result[i] tells whether requests.get(i) succeeded.
+    public boolean[] moveBatch(List<MoveRequest> requests) {
+        int n = requests.size();
+        boolean[] result = new boolean[n];
+
+        switch (granularity) {
+            case GLOBAL:
+                globalLock.lock();
+                try {
+                    for (int i = 0; i < n; ++i) {
+                        MoveRequest r = requests.get(i);
+                        result[i] = r.source == r.dest || moveUnprotected(r.source, r.dest, r.moves);
+                    }
+                } finally {
+                    globalLock.unlock();
+                }
+                break;
+            case WAREHOUSE:
+            case OPTIMISTIC:
+            case ADAPTIVE:
+            case PRODUCT:
+            case STRIPED: {
+                // order by smallest lock id so neighbours tend to share locks; the request index in
+                // the low bits keeps the sort stable
+                long[] keys = new long[n];
+                int[] counts = new int[n];
+                int m = 0;
+                for (int i = 0; i < n; ++i) {
+                    MoveRequest r = requests.get(i);
+                    if (r.source == r.dest || r.moves.isEmpty()) {
+                        result[i] = true;
+                        continue;
+                    }
+                    counts[i] = lockSet(r);
+                    keys[m++] = ((long) r.moves.lockIds[0] << 32) | i;
+                }
+                Arrays.sort(keys, 0, m);
+
+                // First fit: each pass takes every remaining request whose locks still fit in a
+                // union of at most `cap` locks, so once the union is full the requests inside it
+                // keep joining; the others wait for a later pass.
+                boolean byWarehouse = granularity != LockGranularity.PRODUCT && granularity != LockGranularity.STRIPED;
+                int cap = byWarehouse ? BATCH_WAREHOUSE_SET : BATCH_LOCK_SET;
+                BitSet union = new BitSet();
+                int[] group = new int[m];
+                while (m > 0) {
+                    union.clear();
+                    int size = 0, unionSize = 0, rest = 0;
+                    for (int k = 0; k < m; ++k) {
+                        int i = (int) keys[k];
+                        int[] ids = requests.get(i).moves.lockIds;
+                        int extra = 0;
+                        for (int c = 0; c < counts[i]; ++c) if (!union.get(ids[c])) ++extra;
+                        if (size > 0 && unionSize + extra > cap) {
+                            keys[rest++] = keys[k];
+                            continue;
+                        }
+                        for (int c = 0; c < counts[i]; ++c) union.set(ids[c]);
+                        unionSize += extra;
+                        group[size++] = i;
+                    }
+                    Arrays.sort(group, 0, size);
+                    applyUnionGroup(union, requests, group, size, result);
+                    m = rest;
                 }
+                break;
+            }
+            case LOCK_FREE:
+            case ACTOR:
+                // nothing to amortize
+                for (int i = 0; i < n; ++i) {
+                    MoveRequest r = requests.get(i);
+                    result[i] = move(r.source, r.dest, r.moves);
+                }
+                break;
             default:
                 throw new IllegalStateException("Unknown granularity");
         }
+
+        // one durability wait for the whole batch
+        long last = -1;
+        for (int i = 0; i < n; ++i) {
+            MoveRequest r = requests.get(i);
+            if (r.moves.seq < 0) continue;
+            last = Math.max(last, r.moves.seq);
+            logMove(r.source, r.dest, r.moves);
+        }
+        if (last >= 0) wal.awaitDurable(last);
+        return result;
+    }
+
+    // Hands the move's record to the log and clears its sequence number
+    private void logMove(int source, int dest, MoveDescriptor moves) {
+        wal.append(moves.seq, source, dest, moves);
+        moves.seq = -1;
+    }
+
+    // Fills r.moves.lockIds with the sorted warehouse, product or stripe ids the request needs
+    // (whichever this mode locks); returns their count
+    private int lockSet(MoveRequest r) {
+        if (granularity == LockGranularity.STRIPED) return stripeFootprint(r.source, r.dest, r.moves, true, true);
+        if (granularity == LockGranularity.PRODUCT) {
+            int[] ids = r.moves.lockIds(r.moves.size);
+            System.arraycopy(r.moves.products, 0, ids, 0, r.moves.size);
+            return r.moves.size;
+        }
+        int[] ids = r.moves.lockIds(2);
+        ids[0] = Math.min(r.source, r.dest);
+        ids[1] = Math.max(r.source, r.dest);
+        return 2;
+    }
+
+    // Locks every id in union in ascending order, applies group[0..size) and unlocks
+    private void applyUnionGroup(BitSet union, List<MoveRequest> requests, int[] group, int size,
+                                 boolean[] result) {
+        if (granularity == LockGranularity.OPTIMISTIC) {
+            long[] stamps = new long[W];
+            for (int l = union.nextSetBit(0); l >= 0; l = union.nextSetBit(l + 1)) stamps[l] = writeLockWarehouse(l);
+            try {
+                applyGroup(requests, group, size, result);
+            } finally {
+                for (int l = union.length() - 1; l >= 0; l = union.previousSetBit(l - 1)) {
+                    unlockWriteWarehouse(l, stamps[l]);
+                }
+            }
+            return;
+        }
+        // a whole group is worth a coarse hold regardless of the ADAPTIVE regions' modes
+        Lock[] locks = new Lock[union.length()];
+        for (int l = union.nextSetBit(0); l >= 0; l = union.nextSetBit(l + 1)) {
+            switch (granularity) {
+                case WAREHOUSE:
+                    locks[l] = warehouseLocks[l];
+                    break;
+                case ADAPTIVE:
+                    locks[l] = regions[l].lock.writeLock();
+                    break;
+                case PRODUCT:
+                    locks[l] = productLocks[l];
+                    break;
+                default:
+                    locks[l] = stripeLocks[l];
+            }
+            locks[l].lock();
+        }
+        try {
+            applyGroup(requests, group, size, result);
+        } finally {
+            for (int l = locks.length - 1; l >= 0; l = union.previousSetBit(l - 1)) locks[l].unlock();
+        }
+    }
+
+    private void applyGroup(List<MoveRequest> requests, int[] group, int size, boolean[] result) {
+        for (int k = 0; k < size; ++k) {
+            int i = group[k];
+            MoveRequest r = requests.get(i);
+            result[i] = moveUnprotected(r.source, r.dest, r.moves);
+        }
     }
 
     // Assumes caller holds appropriate locks
-    private boolean moveUnprotected(int source, int dest, Map<Integer, Integer> moves) {
+    private boolean moveUnprotected(int source, int dest, MoveDescriptor moves) {
         // verify enough stock in source for all products
-        for (Map.Entry<Integer, Integer> e : moves.entrySet()) {
-            int p = e.getKey();
-            int amt = e.getValue();
+        for (int i = 0; i < moves.size; ++i) {
+            int p = moves.products[i];
+            int amt = moves.amounts[i];
             if (amt < 0) return false;
             if (inventory[source][p] < amt) return false;
         }
 
         // perform move
-        for (Map.Entry<Integer, Integer> e : moves.entrySet()) {
-            int p = e.getKey();
-            int amt = e.getValue();
+        writesBegun.incrementAndGet(source * COUNTER_STRIDE);
+        writesBegun.incrementAndGet(dest * COUNTER_STRIDE);
+        // numbered inside the write window, so snapshot(seq) sees the counter and the cells agree
+        WriteAheadLog log = wal;
+        if (log != null) moves.seq = log.nextSeq();
+        for (int i = 0; i < moves.size; ++i) {
+            int p = moves.products[i];
+            int amt = moves.amounts[i];
             inventory[source][p] -= amt;
             inventory[dest][p] += amt;
         }
+        writesEnded.incrementAndGet(dest * COUNTER_STRIDE);
+        writesEnded.incrementAndGet(source * COUNTER_STRIDE);
+
+        return true;
+    }
+
+    // Write-locks warehouse w's StampedLock, reporting to the instrumentation (OPTIMISTIC mode)
+    private long writeLockWarehouse(int w) {
+        LockStats stats = instrumentation.warehouse;
+        if (!stats.enabled()) return stampedLocks[w].writeLock();
+        long waited = 0;
+        long stamp = stampedLocks[w].tryWriteLock();
+        if (stamp == 0) {
+            long t0 = System.nanoTime();
+            stamp = stampedLocks[w].writeLock();
+            waited = Math.max(1, System.nanoTime() - t0);
+        }
+        stats.acquired(w, waited, true);
+        return stamp;
+    }
 
+    private void unlockWriteWarehouse(int w, long stamp) {
+        instrumentation.warehouse.released(w);
+        stampedLocks[w].unlockWrite(stamp);
+    }
+
+    // Reads inventory[w][p] without blocking writers (OPTIMISTIC mode)
+    public int readStock(int w, int p) {
+        StampedLock sl = stampedLocks[w];
+        for (int attempt = 0; attempt < OPTIMISTIC_RETRIES; ++attempt) {
+            long stamp = sl.tryOptimisticRead();
+            int qty = inventory[w][p];
+            if (stamp != 0 && sl.validate(stamp)) return qty;
+            Thread.onSpinWait();
+        }
+        long stamp = sl.readLock();
+        try {
+            return inventory[w][p];
+        } finally {
+            sl.unlockRead(stamp);
+        }
+    }
+
+    // Optimistic version of the stock check done by moveUnprotected (OPTIMISTIC mode)
+    private boolean hasStockOptimistic(int source, MoveDescriptor moves) {
+        StampedLock sl = stampedLocks[source];
+        for (int attempt = 0; attempt < OPTIMISTIC_RETRIES; ++attempt) {
+            long stamp = sl.tryOptimisticRead();
+            if (stamp == 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            boolean enough = true;
+            for (int i = 0; i < moves.size; ++i) {
+                int amt = moves.amounts[i];
+                if (amt < 0 || inventory[source][moves.products[i]] < amt) {
+                    enough = false;
+                    break;
+                }
+            }
+            if (sl.validate(stamp)) return enough;
+        }
+        // contended: let the locked path decide
         return true;
     }
 
     public boolean checkInvariants() {
-        long[] totals = new long[P];
+        int[][] snap = snapshot();
+        for (int p = 0; p < P; ++p) {
+            long total = 0;
+            for (int w = 0; w < W; ++w) total += snap[w][p];
+            if (total != initialTotals[p]) {
+                System.err.printf("Invariant violated for product %d: expected=%d actual=%d\n",
+                        p, initialTotals[p], total);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long sumAll() {
+        int[][] snap = snapshot();
+        long s = 0;
+        for (int w = 0; w < W; ++w) for (int p = 0; p < P; ++p) s += snap[w][p];
+        return s;
+    }
+
+    // Linearizable copy of the inventory taken without blocking movers. Only if movers keep
+    // overlapping the copy for SNAPSHOT_RETRIES attempts does it fall back to taking the locks.
+    public int[][] snapshot() {
+        return snapshot(null);
+    }
+
+    // Same, also storing in seq[0] the log sequence number the copy is current up to
+    private int[][] snapshot(long[] seq) {
+        if (lockFree != null) return lockFree.snapshot();
+        if (actors != null) return actors.snapshot(seq);
+
+        int[][] copy = new int[W][P];
+        long[] ended = new long[W];
+        for (int attempt = 0; attempt < SNAPSHOT_RETRIES; ++attempt) {
+            for (int w = 0; w < W; ++w) ended[w] = writesEnded.get(w * COUNTER_STRIDE);
+            readSeq(seq);
+            for (int w = 0; w < W; ++w) System.arraycopy(inventory[w], 0, copy[w], 0, P);
+            // keep the plain reads above from drifting past the validation below
+            VarHandle.acquireFence();
+            boolean consistent = true;
+            for (int w = 0; w < W; ++w) {
+                // begun >= ended always; equality means no write was in flight when we started
+                // and none has started since
+                if (writesBegun.get(w * COUNTER_STRIDE) != ended[w]) {
+                    consistent = false;
+                    break;
+                }
+            }
+            if (consistent) return copy;
+            Thread.yield();
+        }
+        snapshotFallbacks.incrementAndGet();
+        return lockedSnapshot(seq);
+    }
+
+    // Snapshots so far that gave up on the non-blocking copy and stopped the movers: took every
+    // lock, froze every cell (LOCK_FREE) or paused every actor (ACTOR)
+    public long snapshotFallbacks() {
+        if (lockFree != null) return lockFree.fallbacks.get();
+        if (actors != null) return actors.fallbacks.get();
+        return snapshotFallbacks.get();
+    }
+
+    private void readSeq(long[] seq) {
+        WriteAheadLog log = wal;
+        if (seq != null) seq[0] = log == null ? 0 : log.currentSeq();
+    }
+
+    private int[][] lockedSnapshot(long[] seq) {
+        int[][] copy = new int[W][P];
         switch (granularity) {
             case GLOBAL:
                 globalLock.lock();
                 try {
-                    for (int p = 0; p < P; ++p) {
-                        long s = 0;
-                        for (int w = 0; w < W; ++w) s += inventory[w][p];
-                        totals[p] = s;
-                    }
+                    readSeq(seq);
+                    for (int w = 0; w < W; ++w) System.arraycopy(inventory[w], 0, copy[w], 0, P);
                 } finally { globalLock.unlock(); }
                 break;
             case WAREHOUSE:
                 // lock all warehouses in order
                 for (int w = 0; w < W; ++w) warehouseLocks[w].lock();
                 try {
-                    for (int p = 0; p < P; ++p) {
-                        long s = 0;
-                        for (int w = 0; w < W; ++w) s += inventory[w][p];
-                        totals[p] = s;
-                    }
+                    readSeq(seq);
+                    for (int w = 0; w < W; ++w) System.arraycopy(inventory[w], 0, copy[w], 0, P);
                 } finally {
                     for (int w = W - 1; w >= 0; --w) warehouseLocks[w].unlock();
                 }
@@ -140,32 +632,124 @@ public class WarehouseSystem {
                 // lock all products in order
                 for (int p = 0; p < P; ++p) productLocks[p].lock();
                 try {
-                    for (int p = 0; p < P; ++p) {
-                        long s = 0;
-                        for (int w = 0; w < W; ++w) s += inventory[w][p];
-                        totals[p] = s;
-                    }
+                    readSeq(seq);
+                    for (int w = 0; w < W; ++w) System.arraycopy(inventory[w], 0, copy[w], 0, P);
                 } finally {
                     for (int p = P - 1; p >= 0; --p) productLocks[p].unlock();
                 }
                 break;
+            case OPTIMISTIC:
+                // read-lock all warehouses in order
+                long[] stamps = new long[W];
+                for (int w = 0; w < W; ++w) stamps[w] = stampedLocks[w].readLock();
+                try {
+                    readSeq(seq);
+                    for (int w = 0; w < W; ++w) System.arraycopy(inventory[w], 0, copy[w], 0, P);
+                } finally {
+                    for (int w = W - 1; w >= 0; --w) stampedLocks[w].unlockRead(stamps[w]);
+                }
+                break;
+            case ADAPTIVE:
+                // write-lock all regions in order, which excludes coarse and fine movers alike
+                for (int w = 0; w < W; ++w) regions[w].lock.writeLock().lock();
+                try {
+                    readSeq(seq);
+                    for (int w = 0; w < W; ++w) System.arraycopy(inventory[w], 0, copy[w], 0, P);
+                } finally {
+                    for (int w = W - 1; w >= 0; --w) regions[w].lock.writeLock().unlock();
+                }
+                break;
+            case STRIPED:
+                // lock all stripes in order
+                for (ReentrantLock l : stripeLocks) l.lock();
+                try {
+                    readSeq(seq);
+                    for (int w = 0; w < W; ++w) System.arraycopy(inventory[w], 0, copy[w], 0, P);
+                } finally {
+                    for (int i = stripeLocks.length - 1; i >= 0; --i) stripeLocks[i].unlock();
+                }
+                break;
             default:
                 throw new IllegalStateException("unknown granularity");
         }
+        return copy;
+    }
 
-        for (int p = 0; p < P; ++p) {
-            if (totals[p] != initialTotals[p]) {
-                System.err.printf("Invariant violated for product %d: expected=%d actual=%d\n",
-                        p, initialTotals[p], totals[p]);
-                return false;
-            }
+    // Makes the system durable: from here on every successful move is in the write-ahead log in dir
+    // before it returns. Starts a new history, replacing whatever dir held; use recover() to continue
+    // from it instead. A checkpoint is taken now and then every checkpointMillis (never if <= 0).
+    public void enablePersistence(Path dir, long checkpointMillis) throws IOException {
+        attachLog(new WriteAheadLog(dir, 0), checkpointMillis);
+    }
+
+    // Rebuilds a system from the checkpoint and log in dir and keeps logging there
+    public static WarehouseSystem recover(Path dir, LockGranularity granularity, int stripes,
+                                          long checkpointMillis) throws IOException {
+        WriteAheadLog.Recovered r = WriteAheadLog.recover(dir);
+        WarehouseSystem system = new WarehouseSystem(r.W, r.P, granularity, stripes, r.inventory, r.initialTotals);
+        // the replayed records are about to be dropped with the old segments
+        WriteAheadLog.writeCheckpoint(dir, r.inventory, r.initialTotals, r.W, r.P, r.nextSeq);
+        system.attachLog(new WriteAheadLog(dir, r.nextSeq), checkpointMillis);
+        return system;
+    }
+
+    private synchronized void attachLog(WriteAheadLog log, long checkpointMillis) throws IOException {
+        if (granularity == LockGranularity.LOCK_FREE) {
+            // a multi-word CAS has no point at which a sequence number could be taken along
+            log.close();
+            throw new IllegalStateException("persistence is not supported in LOCK_FREE mode");
+        }
+        if (wal != null) {
+            log.close();
+            throw new IllegalStateException("persistence already enabled");
+        }
+        wal = log;
+        if (actors != null) actors.wal = log;
+        checkpoint();
+        if (checkpointMillis > 0) {
+            checkpointer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "checkpointer");
+                t.setDaemon(true);
+                return t;
+            });
+            checkpointer.scheduleWithFixedDelay(() -> {
+                try {
+                    checkpoint();
+                } catch (IOException e) {
+                    System.err.println("Checkpoint failed: " + e.getMessage());
+                }
+            }, checkpointMillis, checkpointMillis, TimeUnit.MILLISECONDS);
         }
-        return true;
     }
 
-    public long sumAll() {
-        long s = 0;
-        for (int w = 0; w < W; ++w) for (int p = 0; p < P; ++p) s += inventory[w][p];
-        return s;
+    // Writes the current inventory to the checkpoint so recovery replays only what follows it.
+    // The snapshot is the non-blocking one, so movers keep going while it is taken.
+    public synchronized void checkpoint() throws IOException {
+        if (wal == null) throw new IllegalStateException("persistence not enabled");
+        long[] seq = new long[1];
+        int[][] snap = snapshot(seq);
+        wal.checkpoint(snap, initialTotals, seq[0]);
+    }
+
+    // Stops the actor threads of ACTOR mode and flushes the write-ahead log, if any
+    @Override
+    public void close() {
+        if (checkpointer != null) {
+            // let a running checkpoint finish rather than interrupt its file writes
+            checkpointer.shutdown();
+            try {
+                checkpointer.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (actors != null) actors.shutdown();
+        if (wal != null) {
+            try {
+                wal.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
     }
-}
\ No newline at end of file
+}
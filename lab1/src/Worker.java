@@ -1,65 +1,164 @@
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.Callable;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Worker implements Callable<Integer> {
     final WarehouseSystem system;
     final int ops;
     final Random rng;
+    final int batchSize; // moves handed to moveBatch() at once, 1 == plain move()
+    final Workload workload;
+    // latency of each move()/moveBatch() call and of each invariant audit; null = not recorded
+    final LatencyHistogram opLatency;
+    final LatencyHistogram auditLatency;
 
     public Worker(WarehouseSystem system, int ops, long seed) {
+        this(system, ops, seed, 1);
+    }
+
+    public Worker(WarehouseSystem system, int ops, long seed, int batchSize) {
+        this(system, ops, seed, batchSize, null, null);
+    }
+
+    public Worker(WarehouseSystem system, int ops, long seed, int batchSize,
+                  LatencyHistogram opLatency, LatencyHistogram auditLatency) {
+        this(system, ops, seed, batchSize, opLatency, auditLatency, Workload.uniform(system.W, system.P));
+    }
+
+    public Worker(WarehouseSystem system, int ops, long seed, int batchSize,
+                  LatencyHistogram opLatency, LatencyHistogram auditLatency, Workload workload) {
         this.system = system;
         this.ops = ops;
         this.rng = new Random(seed);
+        this.batchSize = batchSize;
+        this.opLatency = opLatency;
+        this.auditLatency = auditLatency;
+        this.workload = workload;
     }
 
     @Override
     public Integer call() {
         int success = 0;
+        // requests (and their descriptors) are pooled and reused, so the loop itself allocates nothing
+        MoveRequest[] pool = new MoveRequest[Math.max(1, batchSize)];
+        for (int k = 0; k < pool.length; ++k) pool[k] = new MoveRequest();
+        List<MoveRequest> batch = new ArrayList<>(batchSize);
+        int[] pair = new int[2];
         for (int i = 0; i < ops; ++i) {
-            // choose random source, dest, and set of products
-            int s = rng.nextInt(system.W);
-            int d;
-            do { d = rng.nextInt(system.W); } while (d == s);
+            if (workload.nextIsRead(rng)) {
+                // a stock lookup instead of a move
+                long t0 = opLatency != null ? System.nanoTime() : 0;
+                readStock(rng.nextInt(system.W), workload.nextProduct(rng));
+                if (opLatency != null) opLatency.record(System.nanoTime() - t0);
+                audit(i);
+                continue;
+            }
+
+            // choose source, dest, and set of products
+            workload.nextPair(rng, pair);
+            int s = pair[0];
+            int d = pair[1];
 
             int numProducts = 1 + rng.nextInt(Math.min(system.P, 4));
-            Map<Integer,Integer> moves = new HashMap<>();
+            MoveRequest req = pool[batch.size()];
+            req.reset(s, d);
+            MoveDescriptor moves = req.moves;
             for (int k = 0; k < numProducts; ++k) {
-                int p = rng.nextInt(system.P);
-                int maxAmt;
-                switch (system.granularity) {
-                    case GLOBAL:
-                        system.globalLock.lock();
-                        try { maxAmt = system.inventory[s][p]; } finally { system.globalLock.unlock(); }
-                        break;
-                    case WAREHOUSE:
-                        system.warehouseLocks[s].lock();
-                        try { maxAmt = system.inventory[s][p]; } finally { system.warehouseLocks[s].unlock(); }
-                        break;
-                    case PRODUCT:
-                        system.productLocks[p].lock();
-                        try { maxAmt = system.inventory[s][p]; } finally { system.productLocks[p].unlock(); }
-                        break;
-                    default:
-                        maxAmt = system.inventory[s][p];
-                }
+                int p = workload.nextProduct(rng);
+                int maxAmt = readStock(s, p);
                 if (maxAmt <= 0) continue; // can't move this product
                 int amt = 1 + rng.nextInt(Math.max(1, maxAmt/2));
-                moves.merge(p, amt, Integer::sum);
+                moves.add(p, amt);
             }
 
             if (moves.isEmpty()) continue;
-            boolean ok = system.move(s, d, moves);
-            if (ok) ++success;
 
-            if ((i & 0x1FFF) == 0) { // evaluates to true once every 8192 = 2^13 iterations of the loop
-                boolean inv = system.checkInvariants();
-                if (!inv) {
-                    throw new IllegalStateException("Invariant failed during worker ops");
-                }
+            if (batchSize > 1) {
+                batch.add(req);
+                if (batch.size() == batchSize) success += flush(batch);
+            } else {
+                long t0 = opLatency != null ? System.nanoTime() : 0;
+                boolean ok = system.move(s, d, moves);
+                if (opLatency != null) opLatency.record(System.nanoTime() - t0);
+                if (ok) ++success;
             }
+
+            audit(i);
         }
+        if (!batch.isEmpty()) success += flush(batch);
+        return success;
+    }
+
+    private void audit(int i) {
+        if ((i & 0x1FFF) == 0) { // evaluates to true once every 8192 = 2^13 iterations of the loop
+            long t0 = auditLatency != null ? System.nanoTime() : 0;
+            boolean inv = system.checkInvariants();
+            if (auditLatency != null) auditLatency.record(System.nanoTime() - t0);
+            if (!inv) {
+                throw new IllegalStateException("Invariant failed during worker ops");
+            }
+        }
+    }
+
+    // Current stock of product p in warehouse s, read the way this granularity allows
+    private int readStock(int s, int p) {
+        int maxAmt;
+        switch (system.granularity) {
+            case GLOBAL:
+                system.globalLock.lock();
+                try { maxAmt = system.inventory[s][p]; } finally { system.globalLock.unlock(); }
+                break;
+            case WAREHOUSE:
+                system.warehouseLocks[s].lock();
+                try { maxAmt = system.inventory[s][p]; } finally { system.warehouseLocks[s].unlock(); }
+                break;
+            case PRODUCT:
+                system.productLocks[p].lock();
+                try { maxAmt = system.inventory[s][p]; } finally { system.productLocks[p].unlock(); }
+                break;
+            case OPTIMISTIC:
+                maxAmt = system.readStock(s, p);
+                break;
+            case LOCK_FREE:
+                maxAmt = system.lockFree.read(s, p);
+                break;
+            case STRIPED:
+                ReentrantLock stripe = system.stripeLocks[system.stripeOf(s, p)];
+                stripe.lock();
+                try { maxAmt = system.inventory[s][p]; } finally { stripe.unlock(); }
+                break;
+            case ADAPTIVE:
+                // a fine-mode writer only holds the region's read lock, so take the stripe too
+                AdaptiveRegion region = system.regions[s];
+                ReentrantLock cell = system.stripeLocks[system.stripeOf(s, p)];
+                region.lock.readLock().lock();
+                cell.lock();
+                try {
+                    maxAmt = system.inventory[s][p];
+                } finally {
+                    cell.unlock();
+                    region.lock.readLock().unlock();
+                }
+                break;
+            case ACTOR:
+                // only the owning actor writes the row; a stale value just sizes the request
+                maxAmt = system.inventory[s][p];
+                break;
+            default:
+                maxAmt = system.inventory[s][p];
+        }
+        return maxAmt;
+    }
+
+    private int flush(List<MoveRequest> batch) {
+        int success = 0;
+        long t0 = opLatency != null ? System.nanoTime() : 0;
+        boolean[] results = system.moveBatch(batch);
+        if (opLatency != null) opLatency.record(System.nanoTime() - t0);
+        for (boolean ok : results) if (ok) ++success;
+        batch.clear();
         return success;
     }
 }
\ No newline at end of file
@@ -0,0 +1,124 @@
+import java.util.Random;
+
+// Access pattern of the workers. Products are drawn from a Zipf(s) distribution over a fixed
+// shuffled ranking (s == 0 is uniform), a share of the moves goes between a few hot warehouse
+// pairs, and a share of the operations only reads a stock level instead of moving anything.
+public class Workload {
+    final String name;
+    final int W;
+    final int P;
+    final double zipfS;
+    final double hotPairFraction;
+    final double readFraction;
+
+    // empty when uniform
+    private final double[] cdf;      // cdf[r]: probability of drawing one of the r + 1 hottest products
+    private final int[] byRank;      // byRank[r]: product id of rank r
+    private final int[] hotSources;  // hot pair i moves between hotSources[i] and hotDests[i],
+    private final int[] hotDests;    // in either direction so neither end runs dry
+
+    // hotPairsStocked() looks at this many of the hottest products
+    static final int HOT_PRODUCTS = 8;
+
+    public Workload(String name, int warehouses, int products, double zipfS,
+                    double hotPairFraction, int hotPairs, double readFraction, long seed) {
+        if (warehouses < 2) throw new IllegalArgumentException("a move needs two warehouses");
+        this.name = name;
+        this.W = warehouses;
+        this.P = products;
+        this.zipfS = zipfS;
+        this.hotPairFraction = hotPairFraction;
+        this.readFraction = readFraction;
+        Random rng = new Random(seed);
+
+        // hot products are scattered over the id space so they don't all share stripes or lines
+        this.byRank = new int[zipfS == 0 ? 0 : P];
+        for (int p = 0; p < byRank.length; ++p) byRank[p] = p;
+        for (int p = byRank.length - 1; p > 0; --p) {
+            int q = rng.nextInt(p + 1);
+            int t = byRank[p];
+            byRank[p] = byRank[q];
+            byRank[q] = t;
+        }
+        this.cdf = new double[byRank.length];
+        double sum = 0;
+        for (int r = 0; r < cdf.length; ++r) {
+            sum += 1.0 / Math.pow(r + 1, zipfS);
+            cdf[r] = sum;
+        }
+        for (int r = 0; r < cdf.length; ++r) cdf[r] /= sum;
+
+        this.hotSources = new int[hotPairs];
+        this.hotDests = new int[hotPairs];
+        for (int i = 0; i < hotPairs; ++i) {
+            hotSources[i] = rng.nextInt(W);
+            do { hotDests[i] = rng.nextInt(W); } while (hotDests[i] == hotSources[i]);
+        }
+    }
+
+    public static Workload uniform(int warehouses, int products) {
+        return new Workload("uniform", warehouses, products, 0, 0, 0, 0, 0);
+    }
+
+    // Named profiles used by WarehouseBench
+    public static Workload profile(String name, int warehouses, int products) {
+        switch (name) {
+            case "uniform":
+                return uniform(warehouses, products);
+            case "zipf":
+                return new Workload(name, warehouses, products, 1.0, 0, 0, 0, 42);
+            case "zipf-hotpairs":
+                // hot SKUs shipped mostly back and forth along two lanes
+                return new Workload(name, warehouses, products, 1.2, 0.8, 2, 0, 42);
+            case "zipf-readheavy":
+                return new Workload(name, warehouses, products, 1.0, 0, 0, 0.9, 42);
+            default:
+                throw new IllegalArgumentException("unknown workload profile: " + name);
+        }
+    }
+
+    public int nextProduct(Random rng) {
+        if (zipfS == 0) return rng.nextInt(P);
+        double u = rng.nextDouble();
+        int lo = 0;
+        int hi = P - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cdf[mid] < u) lo = mid + 1;
+            else hi = mid;
+        }
+        return byRank[lo];
+    }
+
+    // Picks a (source, dest) pair with source != dest into pair[0], pair[1]
+    public void nextPair(Random rng, int[] pair) {
+        if (hotSources.length > 0 && rng.nextDouble() < hotPairFraction) {
+            int i = rng.nextInt(hotSources.length);
+            boolean back = rng.nextBoolean();
+            pair[0] = back ? hotDests[i] : hotSources[i];
+            pair[1] = back ? hotSources[i] : hotDests[i];
+            return;
+        }
+        pair[0] = rng.nextInt(W);
+        do { pair[1] = rng.nextInt(W); } while (pair[1] == pair[0]);
+    }
+
+    public boolean nextIsRead(Random rng) {
+        return readFraction > 0 && rng.nextDouble() < readFraction;
+    }
+
+    // Whether both ends of every hot pair still hold some of the hottest products, i.e. the hot
+    // moves were still moving stock rather than being skipped for lack of it
+    public boolean hotPairsStocked(WarehouseSystem system) {
+        int[][] snap = system.snapshot();
+        int hot = Math.min(P, HOT_PRODUCTS);
+        for (int i = 0; i < hotSources.length; ++i) {
+            for (int w : new int[]{hotSources[i], hotDests[i]}) {
+                long stock = 0;
+                for (int r = 0; r < hot; ++r) stock += snap[w][zipfS == 0 ? r : byRank[r]];
+                if (stock == 0) return false;
+            }
+        }
+        return true;
+    }
+}
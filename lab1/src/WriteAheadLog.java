@@ -0,0 +1,301 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Durable log of successful moves. Every move gets a sequence number while its locks are held;
+// after releasing them the mover hands its record to a single flusher thread and waits. The
+// flusher writes whatever has queued up in sequence order into a memory-mapped segment and
+// forces it once for the whole group, so a flush is paid per group, never per move and never
+// under a warehouse lock.
+//
+// Files in the log directory:
+//   checkpoint.bin             inventory, initial totals and the sequence number it includes up to
+//   wal-<first seq>.log        SEGMENT_BYTES of records: int length, long seq, int source,
+//                              int dest, int n, n * (int product, int amount), int crc32
+// Recovery = checkpoint + replay of the contiguous run of records starting at its sequence number.
+public class WriteAheadLog implements AutoCloseable {
+    static final int SEGMENT_BYTES = 64 << 20;
+    static final int CHECKPOINT_MAGIC = 0x57484350; // "WHCP"
+    static final String CHECKPOINT = "checkpoint.bin";
+
+    static final class Record {
+        final long seq;
+        final byte[] bytes;
+
+        Record(long seq, byte[] bytes) {
+            this.seq = seq;
+            this.bytes = bytes;
+        }
+    }
+
+    // What recover() found on disk
+    static final class Recovered {
+        final int W, P;
+        final int[][] inventory;
+        final long[] initialTotals;
+        final long nextSeq;
+        final long replayed;
+
+        Recovered(int W, int P, int[][] inventory, long[] initialTotals, long nextSeq, long replayed) {
+            this.W = W;
+            this.P = P;
+            this.inventory = inventory;
+            this.initialTotals = initialTotals;
+            this.nextSeq = nextSeq;
+            this.replayed = replayed;
+        }
+    }
+
+    final Path dir;
+    private final AtomicLong nextSeq;
+    private final LinkedTransferQueue<Record> queue = new LinkedTransferQueue<>();
+    private final Object durableMonitor = new Object();
+    private volatile long durableSeq;          // every seq below this is on disk
+    private volatile IOException failure;
+    private volatile boolean closing;
+    private final Thread flusher;
+
+    // flusher-thread state
+    private final PriorityQueue<Record> pending = new PriorityQueue<>((a, b) -> Long.compare(a.seq, b.seq));
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+
+    // Starts logging at firstSeq into a fresh segment of dir. Older segments are dropped: their
+    // moves are either in the checkpoint already (recovery) or belong to an abandoned history.
+    public WriteAheadLog(Path dir, long firstSeq) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        for (Path file : segments(dir)) Files.deleteIfExists(file);
+        this.nextSeq = new AtomicLong(firstSeq);
+        this.durableSeq = firstSeq;
+        openSegment(firstSeq);
+        this.flusher = new Thread(this::flushLoop, "wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // Called with the move's locks held, so sequence order is a valid replay order
+    long nextSeq() {
+        return nextSeq.getAndIncrement();
+    }
+
+    // Number of sequence numbers handed out so far; read by checkpoints inside a consistent snapshot
+    long currentSeq() {
+        return nextSeq.get();
+    }
+
+    // Queues the record of an applied move without waiting for it to become durable
+    void append(long seq, int source, int dest, MoveDescriptor moves) {
+        int n = moves.size;
+        ByteBuffer b = ByteBuffer.allocate(4 + 8 + 4 + 4 + 4 + 8 * n + 4);
+        b.putInt(b.capacity() - 4).putLong(seq).putInt(source).putInt(dest).putInt(n);
+        for (int i = 0; i < n; ++i) b.putInt(moves.products[i]).putInt(moves.amounts[i]);
+        CRC32 crc = new CRC32();
+        crc.update(b.array(), 4, b.position() - 4);
+        b.putInt((int) crc.getValue());
+        queue.add(new Record(seq, b.array()));
+    }
+
+    // Blocks until every record up to and including seq is on disk
+    void awaitDurable(long seq) {
+        if (durableSeq > seq) return;
+        synchronized (durableMonitor) {
+            while (durableSeq <= seq) {
+                if (failure != null) throw new UncheckedIOException("write-ahead log failed", failure);
+                try {
+                    durableMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted waiting for the write-ahead log", e);
+                }
+            }
+        }
+    }
+
+    private void flushLoop() {
+        try {
+            while (true) {
+                Record r = queue.take();
+                if (r.bytes == null) break; // close()
+                pending.add(r);
+                List<Record> group = new ArrayList<>();
+                queue.drainTo(group);
+                boolean stop = false;
+                for (Record g : group) {
+                    if (g.bytes == null) stop = true;
+                    else pending.add(g);
+                }
+
+                // write the contiguous run we have; later records wait for the gap to fill
+                long next = durableSeq;
+                boolean wrote = false;
+                while (!pending.isEmpty() && pending.peek().seq == next) {
+                    write(pending.poll().bytes);
+                    ++next;
+                    wrote = true;
+                }
+                if (wrote) {
+                    segment.force();
+                    synchronized (durableMonitor) {
+                        durableSeq = next;
+                        durableMonitor.notifyAll();
+                    }
+                }
+                // movers are done by the time close() is called, so a gap left now never fills
+                if (stop) break;
+            }
+        } catch (IOException e) {
+            failure = e;
+            synchronized (durableMonitor) {
+                durableMonitor.notifyAll();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(byte[] record) throws IOException {
+        // keep room for the zero length that marks the end of a segment
+        if (segment.remaining() < record.length + 4) {
+            segment.force();
+            channel.close();
+            openSegment(ByteBuffer.wrap(record).getLong(4));
+        }
+        segment.put(record);
+    }
+
+    private void openSegment(long firstSeq) throws IOException {
+        Path file = dir.resolve(String.format("wal-%020d.log", firstSeq));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES);
+    }
+
+    // Persists a checkpoint that includes every move with a sequence number below seq, then drops
+    // the segments that only hold such moves
+    void checkpoint(int[][] inventory, long[] initialTotals, long seq) throws IOException {
+        int W = inventory.length;
+        int P = initialTotals.length;
+        writeCheckpoint(dir, inventory, initialTotals, W, P, seq);
+
+        List<Path> segments = segments(dir);
+        for (int i = 0; i + 1 < segments.size(); ++i) {
+            // every record of segment i is below the first seq of segment i + 1
+            if (firstSeqOf(segments.get(i + 1)) <= seq) Files.deleteIfExists(segments.get(i));
+        }
+    }
+
+    static void writeCheckpoint(Path dir, int[][] inventory, long[] initialTotals, int W, int P, long seq)
+            throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(4 + 4 + 4 + 8 + 8 * P + 4 * W * P + 4);
+        b.putInt(CHECKPOINT_MAGIC).putInt(W).putInt(P).putLong(seq);
+        for (int p = 0; p < P; ++p) b.putLong(initialTotals[p]);
+        for (int w = 0; w < W; ++w) for (int p = 0; p < P; ++p) b.putInt(inventory[w][p]);
+        CRC32 crc = new CRC32();
+        crc.update(b.array(), 0, b.position());
+        b.putInt((int) crc.getValue());
+
+        Path tmp = dir.resolve(CHECKPOINT + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            b.flip();
+            while (b.hasRemaining()) ch.write(b);
+            ch.force(true);
+        }
+        Files.move(tmp, dir.resolve(CHECKPOINT), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Rebuilds the state from the checkpoint plus every record that extends it without a gap
+    static Recovered recover(Path dir) throws IOException {
+        ByteBuffer cp = ByteBuffer.wrap(Files.readAllBytes(dir.resolve(CHECKPOINT)));
+        if (cp.getInt() != CHECKPOINT_MAGIC) throw new IOException("not a warehouse checkpoint");
+        int W = cp.getInt();
+        int P = cp.getInt();
+        long seq = cp.getLong();
+        long[] initialTotals = new long[P];
+        for (int p = 0; p < P; ++p) initialTotals[p] = cp.getLong();
+        int[][] inventory = new int[W][P];
+        for (int w = 0; w < W; ++w) for (int p = 0; p < P; ++p) inventory[w][p] = cp.getInt();
+        CRC32 crc = new CRC32();
+        crc.update(cp.array(), 0, cp.position());
+        if (cp.getInt() != (int) crc.getValue()) throw new IOException("corrupt checkpoint");
+
+        long next = seq;
+        long replayed = 0;
+        outer:
+        for (Path file : segments(dir)) {
+            ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(file));
+            while (b.remaining() >= 4) {
+                int len = b.getInt();
+                if (len <= 0 || len > b.remaining()) break; // end of segment or torn write
+                int start = b.position();
+                crc.reset();
+                crc.update(b.array(), start, len - 4);
+                long recSeq = b.getLong();
+                int source = b.getInt();
+                int dest = b.getInt();
+                int n = b.getInt();
+                if (b.getInt(start + len - 4) != (int) crc.getValue()) break;
+                if (recSeq < next) { // already in the checkpoint
+                    b.position(start + len);
+                    continue;
+                }
+                if (recSeq != next) break outer; // gap: nothing after it was acknowledged
+                for (int i = 0; i < n; ++i) {
+                    int p = b.getInt();
+                    int amt = b.getInt();
+                    inventory[source][p] -= amt;
+                    inventory[dest][p] += amt;
+                }
+                b.position(start + len);
+                ++next;
+                ++replayed;
+            }
+        }
+        return new Recovered(W, P, inventory, initialTotals, next, replayed);
+    }
+
+    private static List<Path> segments(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> list = new ArrayList<>();
+            files.filter(f -> f.getFileName().toString().matches("wal-\\d{20}\\.log"))
+                    .sorted()
+                    .forEach(list::add);
+            return list;
+        }
+    }
+
+    private static long firstSeqOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(4, 24));
+    }
+
+    // Flushes everything queued so far and stops the flusher
+    @Override
+    public void close() throws IOException {
+        if (closing) return;
+        closing = true;
+        queue.add(new Record(Long.MAX_VALUE, null));
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) throw failure;
+    }
+}
@@ -0,0 +1,41 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+// Producer that multiplies whole chunks with the Vector API and publishes each chunk with a
+// single putAll(). Lives in simd/, apart from src/, because it needs --add-modules
+// jdk.incubator.vector at compile and run time; Main constructs it by name (see the README).
+public final class SimdProducer implements Runnable {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private final double[] a, b;
+    private final DoubleQueue q;
+    private final int chunkSize; // products computed and published at once
+
+    public SimdProducer(double[] a, double[] b, DoubleQueue q, int chunkSize) {
+        this.a = a;
+        this.b = b;
+        this.q = q;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override public void run() {
+        try {
+            double[] chunk = new double[chunkSize];
+            for (int i = 0; i < a.length; i += chunkSize) {
+                int n = Math.min(chunkSize, a.length - i);
+                int k = 0;
+                for (int upper = SPECIES.loopBound(n); k < upper; k += SPECIES.length()) {
+                    DoubleVector va = DoubleVector.fromArray(SPECIES, a, i + k);
+                    DoubleVector vb = DoubleVector.fromArray(SPECIES, b, i + k);
+                    va.mul(vb).intoArray(chunk, k);
+                }
+                for (; k < n; k++) chunk[k] = a[i + k] * b[i + k];
+                q.putAll(chunk, 0, n);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } finally {
+            q.close();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+// Running sum of a stream of doubles, fed one value or one chunk at a time
+interface Accumulator {
+    void add(double v);
+
+    default void add(double[] v, int off, int len) {
+        for (int k = off; k < off + len; k++) add(v[k]);
+    }
+
+    double sum();
+
+    final class Naive implements Accumulator {
+        private double sum = 0.0;
+
+        @Override public void add(double v) {
+            sum += v;
+        }
+
+        @Override public void add(double[] v, int off, int len) {
+            for (int k = off; k < off + len; k++) sum += v[k];
+        }
+
+        @Override public double sum() {
+            return sum;
+        }
+    }
+
+    final class Neumaier implements Accumulator {
+        private double sum = 0.0;
+        private double c = 0.0; // low-order bits lost by sum so far
+
+        @Override public void add(double v) {
+            double t = sum + v;
+            if (Math.abs(sum) >= Math.abs(v)) c += (sum - t) + v;
+            else c += (v - t) + sum;
+            sum = t;
+        }
+
+        @Override public double sum() {
+            return sum + c;
+        }
+    }
+
+    // Values are summed naively in blocks of BLOCK; the block sums are merged like a binary
+    // counter, so levels[k] always holds the sum of 2^k blocks and only equal-sized sums are added.
+    final class Pairwise implements Accumulator {
+        private static final int BLOCK = 128;
+
+        private final double[] levels = new double[64];
+        private long blocks = 0;      // bit k set == levels[k] in use
+        private double block = 0.0;
+        private int inBlock = 0;
+
+        @Override public void add(double v) {
+            block += v;
+            if (++inBlock == BLOCK) carry();
+        }
+
+        @Override public void add(double[] v, int off, int len) {
+            int end = off + len;
+            for (int k = off; k < end; ) {
+                int n = Math.min(BLOCK - inBlock, end - k);
+                for (int i = 0; i < n; i++) block += v[k + i];
+                k += n;
+                inBlock += n;
+                if (inBlock == BLOCK) carry();
+            }
+        }
+
+        private void carry() {
+            double s = block;
+            int k = 0;
+            for (long c = blocks; (c & 1) != 0; c >>>= 1, k++) s = levels[k] + s;
+            levels[k] = s;
+            blocks++;
+            block = 0.0;
+            inBlock = 0;
+        }
+
+        @Override public double sum() {
+            double s = 0.0;
+            for (int k = 63; k >= 0; k--) if ((blocks >>> k & 1) != 0) s += levels[k];
+            return s + block;
+        }
+    }
+}
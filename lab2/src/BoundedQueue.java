@@ -1,30 +1,92 @@
-import java.util.concurrent.locks.Condition;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
 
-public class BoundedQueue {
-    private final Double[] buf;
-    private int head = 0, tail = 0, count = 0;
-    private boolean closed = false;
+public class BoundedQueue implements DoubleQueue {
+    // Elastic mode: after every period of max(ADJUST_EVERY, 2 * capacity) dequeued elements (long
+    // enough for the buffer to fill and drain) the capacity is re-evaluated. Both sides
+    // stalling (full and empty) more often than once per STALL_RATE elements means the buffer is
+    // too small to absorb the hand-over, so it doubles; a high-water mark below a quarter of the
+    // capacity means most of it is unused, so it halves. A steadily faster side stalls alone,
+    // and no capacity would help it.
+    private static final int ADJUST_EVERY = 4096;
+    private static final int STALL_RATE = 64;
+
+    // written under the lock; buf, count and closed are volatile because waiters poll them without it
+    private volatile Double[] buf;
+    private int head = 0, tail = 0;
+    private volatile int count = 0;
+    private final int minCapacity, maxCapacity; // equal == fixed capacity
+    private long fullStalls = 0, emptyStalls = 0; // in the current adjustment period
+    private int highWater = 0;
+    private long dequeued = 0;
+    private long periodStart = 0; // dequeued at the last re-evaluation
+    private final List<long[]> trajectory = new ArrayList<>(); // {elements dequeued, new capacity}
+    private volatile boolean closed = false;
+    // hasNext() dequeues under the lock it already holds and parks the element here for next()
+    private double taken;
+    private boolean hasTaken = false;
 
     private final ReentrantLock lock = new ReentrantLock();
-    private final Condition notEmpty = lock.newCondition();
-    private final Condition notFull  = lock.newCondition();
+    final WaitStrategy waitStrategy;
+    private final Waiter roomWaiter;    // producers wait here while the queue is full
+    private final Waiter elementWaiter; // consumers wait here while it is empty
+    private final BooleanSupplier hasRoom = () -> count < buf.length || closed;
+    private final BooleanSupplier hasElements = () -> count > 0 || closed;
 
     public BoundedQueue(int capacity) {
+        this(capacity, WaitStrategy.BLOCK);
+    }
+
+    public BoundedQueue(int capacity, WaitStrategy waitStrategy) {
+        this(capacity, capacity, capacity, waitStrategy);
+    }
+
+    // Elastic queue starting at capacity and resizing itself within [minCapacity, maxCapacity]
+    public BoundedQueue(int capacity, int minCapacity, int maxCapacity) {
+        this(capacity, minCapacity, maxCapacity, WaitStrategy.BLOCK);
+    }
+
+    public BoundedQueue(int capacity, int minCapacity, int maxCapacity, WaitStrategy waitStrategy) {
+        if (minCapacity < 1 || minCapacity > capacity || capacity > maxCapacity) {
+            throw new IllegalArgumentException("need 1 <= minCapacity <= capacity <= maxCapacity");
+        }
         this.buf = new Double[capacity];
+        this.minCapacity = minCapacity;
+        this.maxCapacity = maxCapacity;
+        trajectory.add(new long[]{0, capacity});
+        // BLOCK waits on conditions of the queue's own lock, as a plain Condition.await() would
+        this.waitStrategy = waitStrategy;
+        this.roomWaiter = waitStrategy.newWaiter(lock);
+        this.elementWaiter = waitStrategy.newWaiter(lock);
     }
 
-    public void put(Double x) throws InterruptedException {
+    // Called with the lock held: waits through the strategy with the lock released, so a
+    // spinning waiter doesn't keep the other side out, and returns with it held again
+    private void await(Waiter waiter, BooleanSupplier ready) throws InterruptedException {
+        lock.unlock();
+        try {
+            waiter.await(ready);
+        } finally {
+            lock.lock();
+        }
+    }
+
+    @Override
+    public void put(double x) throws InterruptedException {
         lock.lock();
         try {
+            if (count == buf.length && !closed) fullStalls++;
             while (count == buf.length && !closed) {
-                notFull.await();
+                await(roomWaiter, hasRoom);
             }
             if (closed) throw new IllegalStateException("queue closed");
             buf[tail] = x;
             tail = (tail + 1) % buf.length;
             count++;
-            notEmpty.signal();
+            highWater = Math.max(highWater, count);
+            elementWaiter.signal();
         } finally {
             lock.unlock();
         }
@@ -33,27 +95,188 @@ public class BoundedQueue {
     public Double take() throws InterruptedException {
         lock.lock();
         try {
+            if (count == 0 && !closed) emptyStalls++;
             while (count == 0) {
                 if (closed) return null;
-                notEmpty.await();
+                await(elementWaiter, hasElements);
             }
             Double x = buf[head];
             buf[head] = null;
             head = (head + 1) % buf.length;
             count--;
-            notFull.signal();
+            roomWaiter.signal();
+            dequeued(1);
             return x;
         } finally {
             lock.unlock();
         }
     }
 
+    @Override
+    public boolean hasNext() throws InterruptedException {
+        if (hasTaken) return true;
+        lock.lock();
+        try {
+            if (count == 0 && !closed) emptyStalls++;
+            while (count == 0) {
+                if (closed) return false;
+                await(elementWaiter, hasElements);
+            }
+            taken = buf[head];
+            buf[head] = null;
+            head = (head + 1) % buf.length;
+            count--;
+            roomWaiter.signal();
+            dequeued(1);
+            hasTaken = true;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public double next() {
+        hasTaken = false;
+        return taken;
+    }
+
+    @Override
+    public void putAll(double[] src, int off, int len) throws InterruptedException {
+        lock.lock();
+        try {
+            int i = 0;
+            while (i < len) {
+                if (count == buf.length && !closed) fullStalls++;
+                while (count == buf.length && !closed) {
+                    await(roomWaiter, hasRoom);
+                }
+                if (closed) throw new IllegalStateException("queue closed");
+                int n = Math.min(len - i, buf.length - count);
+                for (int k = 0; k < n; k++) {
+                    buf[tail] = src[off + i++];
+                    tail = (tail + 1) % buf.length;
+                }
+                count += n;
+                highWater = Math.max(highWater, count);
+                elementWaiter.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(double[] dst) throws InterruptedException {
+        int n = 0;
+        if (hasTaken && dst.length > 0) {
+            dst[n++] = next();
+        }
+        lock.lock();
+        try {
+            if (count == 0 && n == 0 && !closed) emptyStalls++;
+            while (count == 0 && n == 0) {
+                if (closed) return 0;
+                await(elementWaiter, hasElements);
+            }
+            int m = Math.min(count, dst.length - n);
+            for (int k = 0; k < m; k++) {
+                dst[n++] = buf[head];
+                buf[head] = null;
+                head = (head + 1) % buf.length;
+            }
+            count -= m;
+            if (m > 0) roomWaiter.signal();
+            dequeued(m);
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int poll(double[] dst) {
+        int n = 0;
+        if (hasTaken && dst.length > 0) {
+            dst[n++] = next();
+        }
+        lock.lock();
+        try {
+            if (count == 0 && n == 0) return closed ? -1 : 0;
+            int m = Math.min(count, dst.length - n);
+            for (int k = 0; k < m; k++) {
+                dst[n++] = buf[head];
+                buf[head] = null;
+                head = (head + 1) % buf.length;
+            }
+            count -= m;
+            if (m > 0) roomWaiter.signal();
+            dequeued(m);
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called with the lock held after m elements left the queue
+    private void dequeued(int m) {
+        if (minCapacity == maxCapacity) return;
+        dequeued += m;
+        long period = dequeued - periodStart;
+        if (period < Math.max(ADJUST_EVERY, 2L * buf.length)) return;
+        periodStart = dequeued;
+
+        int capacity = buf.length;
+        if (fullStalls > 0 && emptyStalls > 0 && (fullStalls + emptyStalls) * STALL_RATE > period) {
+            capacity = (int) Math.min((long) capacity * 2, maxCapacity);
+        } else if (fullStalls == 0 && highWater <= capacity / 4) {
+            capacity = Math.max(capacity / 2, minCapacity);
+        }
+        fullStalls = 0;
+        emptyStalls = 0;
+        highWater = count;
+        if (capacity != buf.length) resize(capacity);
+    }
+
+    // Copies the elements in queue order to the start of a buffer of the given capacity (>= count)
+    private void resize(int capacity) {
+        Double[] next = new Double[capacity];
+        for (int k = 0; k < count; k++) next[k] = buf[(head + k) % buf.length];
+        boolean grew = capacity > buf.length;
+        buf = next;
+        head = 0;
+        tail = count % capacity;
+        trajectory.add(new long[]{dequeued, capacity});
+        if (grew) roomWaiter.signal();
+    }
+
+    // {elements dequeued so far, capacity from then on}, starting with {0, initial capacity}
+    public List<long[]> trajectory() {
+        lock.lock();
+        try {
+            return new ArrayList<>(trajectory);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int capacity() {
+        lock.lock();
+        try {
+            return buf.length;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
     public void close() {
         lock.lock();
         try {
             closed = true;
-            notEmpty.signalAll();
-            notFull.signalAll();
+            elementWaiter.signal();
+            roomWaiter.signal();
         } finally {
             lock.unlock();
         }
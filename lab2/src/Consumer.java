@@ -1,26 +1,41 @@
 public final class Consumer implements Runnable {
-    private final BoundedQueue q;
-    private double sum = 0.0;
+    private final DoubleQueue q;
+    private final int batchSize; // elements taken per drainTo(), 1 == hasNext()/next()
+    private final Accumulator sum;
 
-    public Consumer(BoundedQueue q) {
+    public Consumer(DoubleQueue q) {
+        this(q, 1);
+    }
+
+    public Consumer(DoubleQueue q, int batchSize) {
+        this(q, batchSize, Summation.NAIVE);
+    }
+
+    public Consumer(DoubleQueue q, int batchSize, Summation summation) {
         this.q = q;
+        this.batchSize = batchSize;
+        this.sum = summation.newAccumulator();
     }
 
     public double getSum() {
-        return sum;
+        return sum.sum();
     }
 
     @Override public void run() {
         try {
-            while (true) {
-                Double v = q.take();
-                if (v == null) {
-                    break; // queue closed & empty
+            if (batchSize > 1) {
+                double[] chunk = new double[batchSize];
+                int n;
+                while ((n = q.drainTo(chunk)) > 0) { // 0 once the queue is closed & empty
+                    sum.add(chunk, 0, n);
+                }
+            } else {
+                while (q.hasNext()) { // false once the queue is closed & empty
+                    sum.add(q.next());
                 }
-                sum += v;
             }
         } catch (InterruptedException ie) {
             Thread.currentThread().interrupt();
         }
     }
-}
\ No newline at end of file
+}
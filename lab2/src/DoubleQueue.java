@@ -0,0 +1,30 @@
+// Queue of primitive doubles between the producer and consumer stages. A consumer loops
+//   while (q.hasNext()) use(q.next());
+// which ends once the queue is closed and drained.
+public interface DoubleQueue {
+    // Waits for free space; throws IllegalStateException if the queue was closed
+    void put(double x) throws InterruptedException;
+
+    // Waits until an element is available (true) or the queue is closed and empty (false)
+    boolean hasNext() throws InterruptedException;
+
+    // Removes the element hasNext() waited for
+    double next();
+
+    // Puts src[off .. off + len), as many at a time as there is room for, waking the consumer
+    // once per chunk instead of once per element
+    void putAll(double[] src, int off, int len) throws InterruptedException;
+
+    // Waits for at least one element and moves up to dst.length of them into dst; returns the
+    // count, which is 0 only once the queue is closed and empty
+    int drainTo(double[] dst) throws InterruptedException;
+
+    // Moves whatever is available, up to dst.length elements, into dst without waiting; returns
+    // the count, or -1 once the queue is closed and empty
+    int poll(double[] dst);
+
+    // No more puts; wakes up waiting consumers once the remaining elements are taken
+    void close();
+
+    int capacity();
+}
@@ -0,0 +1,154 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BooleanSupplier;
+
+// Lock-free single-producer/single-consumer ring over a double[]. The producer only writes tail
+// and the consumer only writes head; each side publishes its sequence with a release store and
+// keeps a private copy of the other's, re-reading it only when the ring looks full or empty.
+// Exactly one thread may put and one thread may take. How a side waits when the ring is full
+// or empty is up to its WaitStrategy.
+public class DoubleRingBuffer implements DoubleQueue {
+    // the two sequences sit PAD longs apart so they never share a cache line
+    private static final int PAD = 16;
+    private static final int HEAD = PAD;
+    private static final int TAIL = 2 * PAD;
+
+    private final double[] buf;
+    private final int mask;
+    private final AtomicLongArray seq = new AtomicLongArray(3 * PAD);
+    private volatile boolean closed = false;
+    final WaitStrategy waitStrategy;
+    private final Waiter producerWaiter; // waits for room
+    private final Waiter consumerWaiter; // waits for elements
+    private final BooleanSupplier hasRoom;
+    private final BooleanSupplier hasElements;
+
+    // producer side
+    private long tail;
+    private long cachedHead;
+    long p0, p1, p2, p3, p4, p5, p6, p7; // keeps the two sides' fields apart
+    // consumer side
+    private long head;
+    private long cachedTail;
+
+    // capacity is rounded up to a power of two
+    public DoubleRingBuffer(int capacity) {
+        this(capacity, WaitStrategy.YIELD);
+    }
+
+    public DoubleRingBuffer(int capacity, WaitStrategy waitStrategy) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        this.buf = new double[size];
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+        this.producerWaiter = waitStrategy.newWaiter();
+        this.consumerWaiter = waitStrategy.newWaiter();
+        // evaluated by the owning side only, refreshing its copy of the other side's sequence
+        this.hasRoom = () -> tail - (cachedHead = seq.get(HEAD)) < buf.length || closed;
+        this.hasElements = () -> head < (cachedTail = seq.get(TAIL)) || closed;
+    }
+
+    @Override
+    public void put(double x) throws InterruptedException {
+        awaitRoom();
+        buf[(int) tail & mask] = x;
+        seq.lazySet(TAIL, ++tail);
+        consumerWaiter.signal();
+    }
+
+    // Waits until there is a free slot; throws if the queue gets closed first
+    private void awaitRoom() throws InterruptedException {
+        if (closed) throw new IllegalStateException("queue closed");
+        if (tail - cachedHead == buf.length) {
+            producerWaiter.await(hasRoom);
+            if (closed) throw new IllegalStateException("queue closed");
+        }
+    }
+
+    @Override
+    public boolean hasNext() throws InterruptedException {
+        if (head < cachedTail) return true;
+        cachedTail = seq.get(TAIL);
+        if (head < cachedTail) return true;
+        consumerWaiter.await(hasElements);
+        if (head < cachedTail) return true;
+        // closed; the producer closes after its last put, so a tail read after seeing closed is final
+        cachedTail = seq.get(TAIL);
+        return head < cachedTail;
+    }
+
+    @Override
+    public double next() {
+        double x = buf[(int) head & mask];
+        seq.lazySet(HEAD, ++head);
+        producerWaiter.signal();
+        return x;
+    }
+
+    @Override
+    public void putAll(double[] src, int off, int len) throws InterruptedException {
+        int i = 0;
+        while (i < len) {
+            awaitRoom();
+            int chunk = Math.min(len - i, buf.length - (int) (tail - cachedHead));
+            copyIn(src, off + i, chunk);
+            i += chunk;
+            tail += chunk;
+            seq.lazySet(TAIL, tail); // one publication per chunk
+            consumerWaiter.signal();
+        }
+    }
+
+    @Override
+    public int drainTo(double[] dst) throws InterruptedException {
+        if (dst.length == 0 || !hasNext()) return 0;
+        return copyOut(dst);
+    }
+
+    @Override
+    public int poll(double[] dst) {
+        if (head == cachedTail) {
+            cachedTail = seq.get(TAIL);
+            if (head == cachedTail) {
+                if (!closed) return 0;
+                cachedTail = seq.get(TAIL); // as in hasNext(), final once closed was seen
+                if (head == cachedTail) return -1;
+            }
+        }
+        return dst.length == 0 ? 0 : copyOut(dst);
+    }
+
+    // moves up to dst.length of the elements below cachedTail into dst
+    private int copyOut(double[] dst) {
+        int n = (int) Math.min(cachedTail - head, dst.length);
+        int at = (int) head & mask;
+        int first = Math.min(n, buf.length - at);
+        System.arraycopy(buf, at, dst, 0, first);
+        System.arraycopy(buf, 0, dst, first, n - first);
+        head += n;
+        seq.lazySet(HEAD, head);
+        producerWaiter.signal();
+        return n;
+    }
+
+    // copies len elements into the ring starting at slot tail, wrapping around the end
+    private void copyIn(double[] src, int off, int len) {
+        int at = (int) tail & mask;
+        int first = Math.min(len, buf.length - at);
+        System.arraycopy(src, off, buf, at, first);
+        System.arraycopy(src, off + first, buf, 0, len - first);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        producerWaiter.signal();
+        consumerWaiter.signal();
+    }
+
+    @Override
+    public int capacity() {
+        return buf.length;
+    }
+}
@@ -1,12 +1,41 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Constructor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.function.IntFunction;
 
 public class Main {
 
     private static final int N = 5_000_000;
     private static final int QUEUE_CAPACITY = 15;
     private static final int REPEATS = 5;
+    private static final int BATCH_SIZE = 64; // elements per putAll()/drainTo() in the batched runs
+    private static final int PRODUCERS = 4;   // sharded runs: one lane per producer
+    private static final int CONSUMERS = 2;
+    // elastic runs start at QUEUE_CAPACITY and resize within these bounds (a slot of a
+    // BoundedQueue costs a reference plus a boxed Double, ~20 bytes: the max is ~1.3 MiB)
+    private static final int ELASTIC_MIN_CAPACITY = 4;
+    private static final int ELASTIC_MAX_CAPACITY = 1 << 16;
+    // how the producer and consumer of the ring and of the locked queue wait for each other; each
+    // one gets its own runs. BUSY_SPIN needs a free core per thread: on a single core the spinner
+    // only gives way when its time slice ends, so it is skipped there.
+    private static final WaitStrategy[] WAIT_STRATEGIES = Arrays.stream(WaitStrategy.values())
+            .filter(ws -> ws != WaitStrategy.BUSY_SPIN || Runtime.getRuntime().availableProcessors() >= 2)
+            .toArray(WaitStrategy[]::new);
+    // where the out-of-core runs keep their vector files (generated on first use)
+    private static final Path MAPPED_DIR = Paths.get(System.getProperty("java.io.tmpdir"), "lab2-vectors");
 
     public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("ipc-consumer")) {
+            ipcConsumer(Paths.get(args[1]));
+            return;
+        }
         System.out.printf("N=%d  repeats=%d \n", N, REPEATS);
 
         double[] a = new double[N];
@@ -20,36 +49,268 @@ public class Main {
         double expected = dotProd(a, b);
 
         double last = 0.0;
-        for (int k = 0; k < REPEATS; k++) last = runOnce(a, b);
+        for (int k = 0; k < REPEATS; k++) last = runOnce(a, b, new BoundedQueue(QUEUE_CAPACITY), "locked", 1);
         checkClose("fixed-capacity", expected, last);
+
+        for (int k = 0; k < REPEATS; k++) last = runOnce(a, b, new DoubleRingBuffer(QUEUE_CAPACITY), "spsc-ring", 1);
+        checkClose("spsc-ring", expected, last);
+
+        for (int k = 0; k < REPEATS; k++) {
+            last = runOnce(a, b, new BoundedQueue(QUEUE_CAPACITY), "locked", BATCH_SIZE);
+        }
+        checkClose("locked-batched", expected, last);
+
+        for (int batchSize : new int[]{1, BATCH_SIZE}) {
+            for (int k = 0; k < REPEATS; k++) {
+                BoundedQueue q = new BoundedQueue(QUEUE_CAPACITY, ELASTIC_MIN_CAPACITY, ELASTIC_MAX_CAPACITY);
+                last = runOnce(a, b, q, "elastic", batchSize);
+                printTrajectory(q);
+            }
+            checkClose("elastic", expected, last);
+        }
+
+        for (int k = 0; k < REPEATS; k++) {
+            last = runOnce(a, b, new DoubleRingBuffer(QUEUE_CAPACITY), "spsc-ring", BATCH_SIZE);
+        }
+        checkClose("spsc-ring-batched", expected, last);
+
+        for (WaitStrategy ws : WAIT_STRATEGIES) {
+            for (int k = 0; k < REPEATS; k++) {
+                last = runOnce(a, b, new DoubleRingBuffer(QUEUE_CAPACITY, ws), ws.name().toLowerCase(), 1);
+            }
+            checkClose("wait-" + ws, expected, last);
+            for (int k = 0; k < REPEATS; k++) {
+                last = runOnce(a, b, new BoundedQueue(QUEUE_CAPACITY, ws), "locked-" + ws.name().toLowerCase(), 1);
+            }
+            checkClose("locked-wait-" + ws, expected, last);
+        }
+
+        double first = runSharded(a, b, BoundedQueue::new, "locked");
+        for (int k = 1; k < REPEATS; k++) {
+            checkSame("sharded-locked", first, runSharded(a, b, BoundedQueue::new, "locked"));
+        }
+        checkClose("sharded-locked", expected, first);
+
+        first = runSharded(a, b, DoubleRingBuffer::new, "spsc-ring");
+        for (int k = 1; k < REPEATS; k++) {
+            checkSame("sharded-spsc-ring", first, runSharded(a, b, DoubleRingBuffer::new, "spsc-ring"));
+        }
+        checkClose("sharded-spsc-ring", expected, first);
+
+        // the same vectors streamed from memory-mapped files: nothing of size N on the heap
+        Path aFile = MAPPED_DIR.resolve("a.bin");
+        Path bFile = MAPPED_DIR.resolve("b.bin");
+        long vectorBytes = (long) N * Double.BYTES;
+        if (!hasSize(aFile, vectorBytes) || !hasSize(bFile, vectorBytes)) {
+            Files.createDirectories(MAPPED_DIR);
+            MappedVectorFile.generate(aFile, bFile, N, 43);
+        }
+        try (MappedVectorFile source = new MappedVectorFile(aFile, bFile)) {
+            double streamed = dotProd(source);
+            for (int k = 0; k < REPEATS; k++) {
+                DoubleQueue q = new DoubleRingBuffer(QUEUE_CAPACITY);
+                last = run(new Producer(source, q, BATCH_SIZE), q, "mapped", BATCH_SIZE, source.length());
+            }
+            checkClose("mapped", streamed, last);
+        }
+
+        // producer here, consumer in a child JVM, the queue in a shared mapped file
+        for (int k = 0; k < REPEATS; k++) last = runIpc(a, b, MAPPED_DIR.resolve("ipc.queue"));
+        checkClose("ipc", expected, last);
+
+        // the dot product as one pipeline definition: products -> per-window sums -> total.
+        // Fused, all of it runs in one loop on one thread; split, the products are handed over
+        // through a ring to a thread of their own, like Producer -> queue -> Consumer above.
+        for (int k = 0; k < REPEATS; k++) {
+            last = runPipeline(Pipeline.from(Pipeline.products(a, b))
+                    .window(BATCH_SIZE, 0.0, Double::sum), "fused", N);
+        }
+        checkClose("pipeline-fused", expected, last);
+
+        for (int k = 0; k < REPEATS; k++) {
+            last = runPipeline(Pipeline.from(Pipeline.products(a, b))
+                    .window(BATCH_SIZE, 0.0, Double::sum).ownThread(), "split", N);
+        }
+        checkClose("pipeline-split", expected, last);
+
+        // Vector API products with compensated or pairwise sums; the Neumaier consumer adds the
+        // same values in the same order as dotProdNeumaier(), so it has to match it exactly
+        Constructor<? extends Runnable> simd = simdProducer();
+        if (simd != null) {
+            double stable = dotProdNeumaier(a, b);
+            for (Summation s : new Summation[]{Summation.NEUMAIER, Summation.PAIRWISE}) {
+                for (int k = 0; k < REPEATS; k++) {
+                    DoubleQueue q = new DoubleRingBuffer(QUEUE_CAPACITY);
+                    last = run(simd.newInstance(a, b, q, BATCH_SIZE), q, "simd-" + s.name().toLowerCase(),
+                            BATCH_SIZE, s, N);
+                }
+                if (s == Summation.NEUMAIER) checkSame("simd-neumaier", stable, last);
+                checkClose("simd-" + s, stable, last);
+            }
+        } else {
+            System.out.println("simd runs skipped: compile simd/ in and start with --add-modules jdk.incubator.vector");
+        }
+    }
+
+    // SimdProducer(a, b, q, chunkSize), looked up by name so nothing in src/ refers to the Vector
+    // API; null when the module is not loaded or simd/ was not compiled in
+    private static Constructor<? extends Runnable> simdProducer() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return null;
+        try {
+            return Class.forName("SimdProducer").asSubclass(Runnable.class)
+                    .getConstructor(double[].class, double[].class, DoubleQueue.class, int.class);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    // false for a missing file, so stale or half-written vector files get regenerated
+    private static boolean hasSize(Path file, long bytes) throws IOException {
+        return Files.exists(file) && Files.size(file) == bytes;
+    }
+
+    // "capacity 15 -> 30 @4096 -> ..." with the number of elements dequeued at each resize
+    private static void printTrajectory(BoundedQueue q) {
+        StringBuilder sb = new StringBuilder("           capacity ");
+        for (long[] step : q.trajectory()) {
+            if (step[0] == 0) sb.append(step[1]);
+            else sb.append(" -> ").append(step[1]).append(" @").append(step[0]);
+        }
+        System.out.println(sb);
+    }
+
+    private static double runPipeline(Pipeline pipeline, String tag, long n) throws InterruptedException {
+        long t0 = System.nanoTime();
+        double result = pipeline.reduce(0.0, Double::sum);
+        long t1 = System.nanoTime();
+
+        double millis = (t1 - t0) / 1_000_000.0;
+        System.out.printf("%-10s threads=%d  window=%-4d  time=%8.3f ms  %6.2f Melem/s  result=%.6f%n",
+                tag, pipeline.threadsUsed, BATCH_SIZE, millis, n / millis / 1000, result);
+        return result;
+    }
+
+    private static double runIpc(double[] a, double[] b, Path file) throws Exception {
+        Files.createDirectories(file.getParent());
+        MappedRingQueue q = MappedRingQueue.create(file, QUEUE_CAPACITY, WaitStrategy.YIELD);
+        Process child = new ProcessBuilder(ProcessHandle.current().info().command().orElse("java"),
+                "-cp", System.getProperty("java.class.path"), Main.class.getName(), "ipc-consumer", file.toString())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(child.getInputStream()))) {
+            if (!"ready".equals(out.readLine())) throw new IllegalStateException("ipc consumer did not start");
+
+            long t0 = System.nanoTime();
+            new Producer(a, b, q, BATCH_SIZE).run();
+            String line = out.readLine(); // "sum <bits>" once the consumer has drained the queue
+            long t1 = System.nanoTime();
+            if (child.waitFor() != 0 || line == null) throw new IllegalStateException("ipc consumer failed");
+            q.release();
+
+            double result = Double.longBitsToDouble(Long.parseLong(line.substring(4)));
+            double millis = (t1 - t0) / 1_000_000.0;
+            System.out.printf("%-10s Queue=%-6d  batch=%-4d  time=%8.3f ms  %6.2f Melem/s  result=%.6f%n",
+                    "ipc", q.capacity(), BATCH_SIZE, millis, a.length / millis / 1000, result);
+            return result;
+        }
     }
 
-    private static double runOnce(double[] a, double[] b) throws InterruptedException {
-        BoundedQueue q = new BoundedQueue(QUEUE_CAPACITY);
-        Consumer consumer = new Consumer(q);
+    // Child side of runIpc(): drains the queue in file and reports the exact bits of the sum
+    private static void ipcConsumer(Path file) throws IOException {
+        MappedRingQueue q = MappedRingQueue.open(file, WaitStrategy.YIELD);
+        System.out.println("ready");
+        System.out.flush();
+        Consumer consumer = new Consumer(q, BATCH_SIZE);
+        consumer.run();
+        q.release();
+        System.out.println("sum " + Double.doubleToLongBits(consumer.getSum()));
+    }
+
+    private static double runSharded(double[] a, double[] b, IntFunction<DoubleQueue> lanes, String tag)
+            throws InterruptedException {
+        ShardedPipeline pipeline = new ShardedPipeline(a, b, PRODUCERS, CONSUMERS, lanes, QUEUE_CAPACITY, BATCH_SIZE);
+
+        long t0 = System.nanoTime();
+        double result = pipeline.run();
+        long t1 = System.nanoTime();
+
+        double millis = (t1 - t0) / 1_000_000.0;
+        System.out.printf("%-10s P=%d C=%d  Queue=%-6d  batch=%-4d  time=%8.3f ms  result=%.6f%n",
+                tag, PRODUCERS, pipeline.consumers, QUEUE_CAPACITY, BATCH_SIZE, millis, result);
+        return result;
+    }
 
-        Thread prod = new Thread(new Producer(a, b, q), "producer");
+    private static double runOnce(double[] a, double[] b, DoubleQueue q, String tag, int batchSize)
+            throws InterruptedException {
+        return run(new Producer(a, b, q, batchSize), q, tag, batchSize, a.length);
+    }
+
+    private static double run(Runnable producer, DoubleQueue q, String tag, int batchSize, long n)
+            throws InterruptedException {
+        return run(producer, q, tag, batchSize, Summation.NAIVE, n);
+    }
+
+    private static double run(Runnable producer, DoubleQueue q, String tag, int batchSize, Summation summation,
+                              long n) throws InterruptedException {
+        Consumer consumer = new Consumer(q, batchSize, summation);
+
+        Thread prod = new Thread(producer, "producer");
         Thread cons = new Thread(consumer, "consumer");
 
+        long cpu0 = processCpuNanos();
         long t0 = System.nanoTime();
         prod.start();
         cons.start();
         prod.join();
         cons.join();
         long t1 = System.nanoTime();
+        long cpu1 = processCpuNanos();
 
         double result = consumer.getSum();
         double millis = (t1 - t0) / 1_000_000.0;
-        System.out.printf("Queue=%-6d  time=%8.3f ms  result=%.6f%n", Main.QUEUE_CAPACITY, millis, result);
+        System.out.printf("%-10s Queue=%-6d  batch=%-4d  time=%8.3f ms  cpu=%8.3f ms  %6.2f Melem/s  result=%.6f%n",
+                tag, q.capacity(), batchSize, millis, (cpu1 - cpu0) / 1_000_000.0, n / millis / 1000, result);
         return result;
     }
 
+    // CPU time of all threads of this JVM; tells spinning strategies from sleeping ones
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getProcessCpuTime();
+    }
+
     private static double dotProd(double[] a, double[] b) {
         double s = 0.0;
         for (int i = 0; i < a.length; i++) s += a[i] * b[i];
         return s;
     }
 
+    private static double dotProdNeumaier(double[] a, double[] b) {
+        Accumulator s = Summation.NEUMAIER.newAccumulator();
+        for (int i = 0; i < a.length; i++) s.add(a[i] * b[i]);
+        return s.sum();
+    }
+
+    // dotProd over a streamed source, in the same element order
+    private static double dotProd(VectorSource source) {
+        double[] a = new double[4096];
+        double[] b = new double[4096];
+        double s = 0.0;
+        for (long i = 0; i < source.length(); i += a.length) {
+            int n = (int) Math.min(a.length, source.length() - i);
+            source.read(i, a, b, n);
+            for (int k = 0; k < n; k++) s += a[k] * b[k];
+        }
+        return s;
+    }
+
+    // sharded results are combined in a fixed order, so repeated runs must agree exactly
+    private static void checkSame(String tag, double first, double actual) {
+        if (Double.doubleToLongBits(first) != Double.doubleToLongBits(actual)) {
+            throw new AssertionError(tag + " not reproducible: first=" + first + " now=" + actual);
+        }
+    }
+
     private static void checkClose(String tag, double expected, double actual) {
         double eps = Math.max(1e-9, Math.abs(expected) * 1e-12);
         if (Math.abs(expected - actual) > eps) {
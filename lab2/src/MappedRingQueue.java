@@ -0,0 +1,185 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BooleanSupplier;
+
+// DoubleRingBuffer laid out in a memory-mapped file, so the producer and the consumer can live in
+// different JVMs on the same machine. The mapped region holds the whole state:
+//
+//   byte 0     capacity (power of two)
+//   byte 64    head, written only by the consumer
+//   byte 128   tail, written only by the producer
+//   byte 192   closed flag
+//   byte 256   capacity doubles
+//
+// Sequences are published with release stores and read with acquire loads through a byte-buffer
+// VarHandle, which orders the plain element accesses around them just as in-process. One process
+// create()s the file, the other open()s it; exactly one side puts and one side takes. A process
+// cannot wake a waiter in another one, so BLOCK is not available.
+public class MappedRingQueue implements DoubleQueue {
+    private static final int CAPACITY_AT = 0;
+    private static final int HEAD_AT = 64;
+    private static final int TAIL_AT = 128;
+    private static final int CLOSED_AT = 192;
+    private static final int DATA_AT = 256;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final FileChannel file;
+    private final MappedByteBuffer map;
+    private final int capacity;
+    private final int mask;
+    private final Waiter producerWaiter;
+    private final Waiter consumerWaiter;
+    private final BooleanSupplier hasRoom;
+    private final BooleanSupplier hasElements;
+
+    // this process's copies; only the owning side's are meaningful
+    private long tail, cachedHead;
+    private long head, cachedTail;
+
+    private MappedRingQueue(FileChannel file, MappedByteBuffer map, int capacity, WaitStrategy waitStrategy) {
+        if (waitStrategy == WaitStrategy.BLOCK) {
+            throw new IllegalArgumentException("BLOCK cannot wake a waiter in another process");
+        }
+        this.file = file;
+        map.order(ByteOrder.nativeOrder());
+        this.map = map;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.producerWaiter = waitStrategy.newWaiter();
+        this.consumerWaiter = waitStrategy.newWaiter();
+        this.head = (long) LONGS.getAcquire(map, HEAD_AT);
+        this.tail = (long) LONGS.getAcquire(map, TAIL_AT);
+        this.cachedHead = head;
+        this.cachedTail = tail;
+        this.hasRoom = () -> tail - (cachedHead = (long) LONGS.getAcquire(map, HEAD_AT)) < capacity || closed();
+        this.hasElements = () -> head < (cachedTail = (long) LONGS.getAcquire(map, TAIL_AT)) || closed();
+    }
+
+    // Makes an empty queue in file, replacing what was there; capacity is rounded up to a power of two
+    public static MappedRingQueue create(Path path, int capacity, WaitStrategy waitStrategy) throws IOException {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        MappedByteBuffer map = file.map(FileChannel.MapMode.READ_WRITE, 0, DATA_AT + (long) size * Double.BYTES);
+        LONGS.setRelease(map, CAPACITY_AT, (long) size);
+        return new MappedRingQueue(file, map, size, waitStrategy);
+    }
+
+    // Attaches to a queue another process create()d
+    public static MappedRingQueue open(Path path, WaitStrategy waitStrategy) throws IOException {
+        FileChannel file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer header = file.map(FileChannel.MapMode.READ_WRITE, 0, DATA_AT);
+        int size = (int) (long) LONGS.getAcquire(header, CAPACITY_AT);
+        if (size <= 0 || Integer.bitCount(size) != 1) {
+            file.close();
+            throw new IOException("not a queue file: " + path);
+        }
+        MappedByteBuffer map = file.map(FileChannel.MapMode.READ_WRITE, 0, DATA_AT + (long) size * Double.BYTES);
+        return new MappedRingQueue(file, map, size, waitStrategy);
+    }
+
+    private boolean closed() {
+        return (long) LONGS.getAcquire(map, CLOSED_AT) != 0;
+    }
+
+    private int slot(long seq) {
+        return DATA_AT + ((int) seq & mask) * Double.BYTES;
+    }
+
+    @Override
+    public void put(double x) throws InterruptedException {
+        awaitRoom();
+        map.putDouble(slot(tail), x);
+        LONGS.setRelease(map, TAIL_AT, ++tail);
+    }
+
+    private void awaitRoom() throws InterruptedException {
+        if (closed()) throw new IllegalStateException("queue closed");
+        if (tail - cachedHead == capacity) {
+            producerWaiter.await(hasRoom);
+            if (closed()) throw new IllegalStateException("queue closed");
+        }
+    }
+
+    @Override
+    public boolean hasNext() throws InterruptedException {
+        if (head < cachedTail) return true;
+        cachedTail = (long) LONGS.getAcquire(map, TAIL_AT);
+        if (head < cachedTail) return true;
+        consumerWaiter.await(hasElements);
+        if (head < cachedTail) return true;
+        // closed; the producer closes after its last put, so a tail read after seeing closed is final
+        cachedTail = (long) LONGS.getAcquire(map, TAIL_AT);
+        return head < cachedTail;
+    }
+
+    @Override
+    public double next() {
+        double x = map.getDouble(slot(head));
+        LONGS.setRelease(map, HEAD_AT, ++head);
+        return x;
+    }
+
+    @Override
+    public void putAll(double[] src, int off, int len) throws InterruptedException {
+        int i = 0;
+        while (i < len) {
+            awaitRoom();
+            int chunk = Math.min(len - i, capacity - (int) (tail - cachedHead));
+            for (int k = 0; k < chunk; k++) map.putDouble(slot(tail + k), src[off + i + k]);
+            i += chunk;
+            tail += chunk;
+            LONGS.setRelease(map, TAIL_AT, tail); // one publication per chunk
+        }
+    }
+
+    @Override
+    public int drainTo(double[] dst) throws InterruptedException {
+        if (dst.length == 0 || !hasNext()) return 0;
+        return copyOut(dst);
+    }
+
+    @Override
+    public int poll(double[] dst) {
+        if (head == cachedTail) {
+            cachedTail = (long) LONGS.getAcquire(map, TAIL_AT);
+            if (head == cachedTail) {
+                if (!closed()) return 0;
+                cachedTail = (long) LONGS.getAcquire(map, TAIL_AT);
+                if (head == cachedTail) return -1;
+            }
+        }
+        return dst.length == 0 ? 0 : copyOut(dst);
+    }
+
+    private int copyOut(double[] dst) {
+        int n = (int) Math.min(cachedTail - head, dst.length);
+        for (int k = 0; k < n; k++) dst[k] = map.getDouble(slot(head + k));
+        head += n;
+        LONGS.setRelease(map, HEAD_AT, head);
+        return n;
+    }
+
+    @Override
+    public void close() {
+        LONGS.setRelease(map, CLOSED_AT, 1L);
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    // Unmaps nothing (the GC does) but releases the file handle; call after close() and draining
+    public void release() throws IOException {
+        file.close();
+    }
+}
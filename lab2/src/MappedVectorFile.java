@@ -0,0 +1,96 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+// Vectors a and b stored as raw little-endian doubles in two files, read through memory-mapped
+// windows of WINDOW doubles. Only the current window of each file is mapped, so the vectors can
+// be far larger than the heap; the page cache decides what stays in memory.
+public class MappedVectorFile implements VectorSource, AutoCloseable {
+    static final int WINDOW = 1 << 20; // doubles per mapping (8 MiB)
+
+    private final FileChannel aFile, bFile;
+    private final long n;
+    private DoubleBuffer aWindow, bWindow;
+    private long windowStart;
+
+    public MappedVectorFile(Path a, Path b) throws IOException {
+        this.aFile = FileChannel.open(a, StandardOpenOption.READ);
+        this.bFile = FileChannel.open(b, StandardOpenOption.READ);
+        if (aFile.size() != bFile.size() || aFile.size() % Double.BYTES != 0) {
+            close();
+            throw new IOException("vector files differ in size or are not made of doubles");
+        }
+        this.n = aFile.size() / Double.BYTES;
+    }
+
+    @Override
+    public long length() {
+        return n;
+    }
+
+    @Override
+    public void read(long from, double[] a, double[] b, int len) {
+        int done = 0;
+        while (done < len) {
+            long i = from + done;
+            if (aWindow == null || i < windowStart || i >= windowStart + aWindow.capacity()) map(i - i % WINDOW);
+            int at = (int) (i - windowStart);
+            int k = Math.min(len - done, aWindow.capacity() - at);
+            aWindow.get(at, a, done, k);
+            bWindow.get(at, b, done, k);
+            done += k;
+        }
+    }
+
+    private void map(long start) {
+        long count = Math.min(WINDOW, n - start);
+        try {
+            aWindow = view(aFile.map(FileChannel.MapMode.READ_ONLY, start * Double.BYTES, count * Double.BYTES));
+            bWindow = view(bFile.map(FileChannel.MapMode.READ_ONLY, start * Double.BYTES, count * Double.BYTES));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        windowStart = start;
+    }
+
+    private static DoubleBuffer view(MappedByteBuffer bytes) {
+        return bytes.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        aFile.close();
+        bFile.close();
+    }
+
+    // Writes n elements of a and b drawn the way Main fills its arrays (a[i], then b[i], from
+    // Random(seed)), a window at a time, so files of any size can be made with a small heap
+    public static void generate(Path a, Path b, long n, long seed) throws IOException {
+        Random r = new Random(seed);
+        try (FileChannel aOut = FileChannel.open(a, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             FileChannel bOut = FileChannel.open(b, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (long start = 0; start < n; start += WINDOW) {
+                long count = Math.min(WINDOW, n - start);
+                MappedByteBuffer aMap = aOut.map(FileChannel.MapMode.READ_WRITE, start * Double.BYTES, count * Double.BYTES);
+                MappedByteBuffer bMap = bOut.map(FileChannel.MapMode.READ_WRITE, start * Double.BYTES, count * Double.BYTES);
+                DoubleBuffer aw = view(aMap);
+                DoubleBuffer bw = view(bMap);
+                for (long i = 0; i < count; i++) {
+                    aw.put(r.nextDouble() - 0.5);
+                    bw.put(r.nextDouble() - 0.5);
+                }
+                aMap.force();
+                bMap.force();
+            }
+        }
+    }
+}
@@ -0,0 +1,318 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Supplier;
+
+// Streaming pipeline over doubles: a source, then map / filter / window stages, then a sink or a
+// reduce. Elements travel in chunks. Adjacent cheap stages are fused into one thread that runs
+// the whole chunk through all of them; an expensive stage starts a new thread, fed by the
+// previous one through a DoubleRingBuffer. A stage is expensive when it costs more than
+// SPLIT_NANOS per element: then the ring hop (a few ns per element) is small next to the work
+// it moves to another core. The cost is the stage's cost() hint or, without one, the cheapest
+// ns per element seen while the first chunks run fused on the caller's thread. That sample ends
+// once every stage measured cheap, or after MAX_SAMPLE_CHUNKS chunks: long enough for the JIT to
+// compile the stages, since interpreted code would make every stage look expensive. So a
+// genuinely expensive stage without a hint moves to its own thread only after that many chunks.
+// On a single core nothing is split automatically. ownThread() always splits, and
+// fusion(false) puts every stage on its own thread.
+//
+//   double dot = Pipeline.from(Pipeline.products(a, b)).reduce(0.0, Double::sum);
+public class Pipeline {
+    static final int DEFAULT_CHUNK = 1024;
+    static final int DEFAULT_QUEUE_CAPACITY = 4096;
+    static final double SPLIT_NANOS = 25;
+    static final int MAX_SAMPLE_CHUNKS = 256;
+
+    // Fills chunk from the start; returns the count, 0 once exhausted
+    public interface Source {
+        int next(double[] chunk) throws InterruptedException;
+    }
+
+    // One step, rewriting chunk[0 .. n) in place into its output and returning the output's size
+    // (never more than n). finish() emits what the step still holds at the end of the stream.
+    interface Stage {
+        int apply(double[] chunk, int n);
+
+        default int finish(double[] chunk) {
+            return 0;
+        }
+    }
+
+    private interface Output {
+        void accept(double[] chunk, int n) throws InterruptedException;
+    }
+
+    private final Source source;
+    private final List<Supplier<Stage>> stages = new ArrayList<>(); // fresh state for every run
+    private final List<Boolean> ownThread = new ArrayList<>();
+    private final List<Double> costHint = new ArrayList<>(); // ns per element, NaN = sample it
+    private boolean fusion = true;
+    private int chunk = DEFAULT_CHUNK;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    int threadsUsed; // by the last run, the caller's thread included
+
+    private Pipeline(Source source) {
+        this.source = source;
+    }
+
+    public static Pipeline from(Source source) {
+        return new Pipeline(source);
+    }
+
+    public static Source of(double[] values) {
+        int[] at = {0};
+        return chunk -> {
+            int n = Math.min(chunk.length, values.length - at[0]);
+            System.arraycopy(values, at[0], chunk, 0, n);
+            at[0] += n;
+            return n;
+        };
+    }
+
+    // a[i] * b[i], in order
+    public static Source products(double[] a, double[] b) {
+        int[] at = {0};
+        return chunk -> {
+            int i = at[0];
+            int n = Math.min(chunk.length, a.length - i);
+            for (int k = 0; k < n; k++) chunk[k] = a[i + k] * b[i + k];
+            at[0] += n;
+            return n;
+        };
+    }
+
+    // a[i] * b[i] streamed from a VectorSource, in order
+    public static Source products(VectorSource vectors) {
+        long[] at = {0};
+        double[][] other = {new double[0]};
+        return chunk -> {
+            if (other[0].length < chunk.length) other[0] = new double[chunk.length];
+            int n = (int) Math.min(chunk.length, vectors.length() - at[0]);
+            vectors.read(at[0], chunk, other[0], n);
+            for (int k = 0; k < n; k++) chunk[k] *= other[0][k];
+            at[0] += n;
+            return n;
+        };
+    }
+
+    public Pipeline map(DoubleUnaryOperator op) {
+        return add(() -> (c, n) -> {
+            for (int i = 0; i < n; i++) c[i] = op.applyAsDouble(c[i]);
+            return n;
+        });
+    }
+
+    public Pipeline filter(DoublePredicate keep) {
+        return add(() -> (c, n) -> {
+            int w = 0;
+            for (int i = 0; i < n; i++) if (keep.test(c[i])) c[w++] = c[i];
+            return w;
+        });
+    }
+
+    // Emits op-folded value of every `size` consecutive elements (and of the shorter last window)
+    public Pipeline window(int size, double identity, DoubleBinaryOperator op) {
+        if (size <= 0) throw new IllegalArgumentException("window size must be positive");
+        return add(() -> new Stage() {
+            private double acc = identity;
+            private int count = 0;
+
+            @Override public int apply(double[] c, int n) {
+                int w = 0;
+                for (int i = 0; i < n; i++) {
+                    acc = op.applyAsDouble(acc, c[i]);
+                    if (++count == size) {
+                        c[w++] = acc;
+                        acc = identity;
+                        count = 0;
+                    }
+                }
+                return w;
+            }
+
+            @Override public int finish(double[] c) {
+                if (count == 0) return 0;
+                c[0] = acc;
+                count = 0;
+                return 1;
+            }
+        });
+    }
+
+    // The stage added last runs on its own thread instead of being fused with the one before it
+    public Pipeline ownThread() {
+        if (stages.isEmpty()) throw new IllegalStateException("no stage to put on its own thread");
+        ownThread.set(ownThread.size() - 1, true);
+        return this;
+    }
+
+    // The stage added last costs about nanosPerElement per input element; it is not sampled
+    public Pipeline cost(double nanosPerElement) {
+        if (stages.isEmpty()) throw new IllegalStateException("no stage to give a cost");
+        costHint.set(costHint.size() - 1, nanosPerElement);
+        return this;
+    }
+
+    // With fusion off every stage runs on its own thread
+    public Pipeline fusion(boolean on) {
+        this.fusion = on;
+        return this;
+    }
+
+    public Pipeline chunk(int size) {
+        if (size <= 0) throw new IllegalArgumentException("chunk size must be positive");
+        this.chunk = size;
+        return this;
+    }
+
+    public Pipeline queueCapacity(int capacity) {
+        this.queueCapacity = capacity;
+        return this;
+    }
+
+    private Pipeline add(Supplier<Stage> stage) {
+        stages.add(stage);
+        ownThread.add(false);
+        costHint.add(Double.NaN);
+        return this;
+    }
+
+    public double reduce(double identity, DoubleBinaryOperator op) throws InterruptedException {
+        double[] acc = {identity};
+        sink(x -> acc[0] = op.applyAsDouble(acc[0], x));
+        return acc[0];
+    }
+
+    // Runs the pipeline to completion; the last segment and the sink run on the caller's thread
+    public void sink(DoubleConsumer sink) throws InterruptedException {
+        List<Stage> live = new ArrayList<>();
+        for (Supplier<Stage> s : stages) live.add(s.get());
+        Output toSink = (c, n) -> {
+            for (int i = 0; i < n; i++) sink.accept(c[i]);
+        };
+
+        boolean autoSplit = fusion && Runtime.getRuntime().availableProcessors() > 1;
+        double[] cost = new double[live.size()];
+        boolean unknown = false;
+        for (int i = 0; i < cost.length; i++) {
+            cost[i] = costHint.get(i);
+            unknown |= Double.isNaN(cost[i]);
+        }
+        if (autoSplit && unknown) {
+            double[] c = new double[chunk];
+            if (sampleCosts(live, cost, c, toSink)) {
+                // the sample took the whole stream
+                flush(live, c, toSink);
+                threadsUsed = 1;
+                return;
+            }
+        }
+
+        // cut the stages into segments, each run by one thread
+        List<List<Stage>> segments = new ArrayList<>();
+        segments.add(new ArrayList<>());
+        for (int i = 0; i < live.size(); i++) {
+            if (!fusion || ownThread.get(i) || (autoSplit && cost[i] > SPLIT_NANOS)) segments.add(new ArrayList<>());
+            segments.get(segments.size() - 1).add(live.get(i));
+        }
+        int last = segments.size() - 1;
+        DoubleQueue[] queues = new DoubleQueue[last];
+        for (int k = 0; k < last; k++) queues[k] = new DoubleRingBuffer(queueCapacity);
+
+        Throwable[] failure = new Throwable[1];
+        List<Thread> threads = new ArrayList<>();
+        for (int k = 0; k < last; k++) {
+            Source in = k == 0 ? source : queues[k - 1]::drainTo;
+            DoubleQueue out = queues[k];
+            List<Stage> segment = segments.get(k);
+            DoubleQueue upstream = k == 0 ? null : queues[k - 1];
+            Thread t = new Thread(() -> {
+                try {
+                    runSegment(in, segment, (c, n) -> out.putAll(c, 0, n), chunk);
+                } catch (Throwable e) {
+                    synchronized (failure) {
+                        if (failure[0] == null) failure[0] = e;
+                    }
+                    // a closed input makes the upstream thread's next put fail, so it stops too
+                    if (upstream != null) upstream.close();
+                } finally {
+                    out.close();
+                }
+            }, "pipeline-" + k);
+            threads.add(t);
+        }
+        threadsUsed = threads.size() + 1;
+
+        for (Thread t : threads) t.start();
+        try {
+            runSegment(last == 0 ? source : queues[last - 1]::drainTo, segments.get(last), toSink, chunk);
+        } finally {
+            if (last > 0) queues[last - 1].close();
+            for (Thread t : threads) t.join();
+        }
+        synchronized (failure) {
+            if (failure[0] != null) throw new IllegalStateException("pipeline stage failed", failure[0]);
+        }
+    }
+
+    private static void runSegment(Source in, List<Stage> stages, Output out, int chunkSize)
+            throws InterruptedException {
+        double[] c = new double[chunkSize];
+        int n;
+        while ((n = in.next(c)) > 0) push(stages, 0, c, n, out);
+        flush(stages, c, out);
+    }
+
+    // Runs the first chunks through all stages on this thread, straight to out, until every stage
+    // with a NaN cost has taken at most SPLIT_NANOS per element on some chunk, or for at most
+    // MAX_SAMPLE_CHUNKS chunks. The NaN costs become the cheapest ns per input element seen, so
+    // chunks run before the JIT compiled the stage don't count; a stage that got no input counts
+    // as free. True if the source ran dry during the sample.
+    private boolean sampleCosts(List<Stage> stages, double[] cost, double[] c, Output out)
+            throws InterruptedException {
+        double[] best = new double[stages.size()];
+        Arrays.fill(best, Double.POSITIVE_INFINITY);
+        boolean exhausted = false;
+        for (int k = 0; k < MAX_SAMPLE_CHUNKS && !allCheap(cost, best); k++) {
+            int n = source.next(c);
+            if (n == 0) {
+                exhausted = true;
+                break;
+            }
+            for (int i = 0; i < stages.size() && n > 0; i++) {
+                long t0 = System.nanoTime();
+                int m = stages.get(i).apply(c, n);
+                best[i] = Math.min(best[i], (double) (System.nanoTime() - t0) / n);
+                n = m;
+            }
+            if (n > 0) out.accept(c, n);
+        }
+        for (int i = 0; i < cost.length; i++) {
+            if (Double.isNaN(cost[i])) cost[i] = Double.isInfinite(best[i]) ? 0 : best[i];
+        }
+        return exhausted;
+    }
+
+    private static boolean allCheap(double[] cost, double[] best) {
+        for (int i = 0; i < cost.length; i++) if (Double.isNaN(cost[i]) && best[i] > SPLIT_NANOS) return false;
+        return true;
+    }
+
+    // End of stream: flush stateful stages in order, each flush passing through the stages after it
+    private static void flush(List<Stage> stages, double[] c, Output out) throws InterruptedException {
+        for (int i = 0; i < stages.size(); i++) {
+            int m = stages.get(i).finish(c);
+            if (m > 0) push(stages, i + 1, c, m, out);
+        }
+    }
+
+    private static void push(List<Stage> stages, int from, double[] c, int n, Output out)
+            throws InterruptedException {
+        for (int i = from; i < stages.size() && n > 0; i++) n = stages.get(i).apply(c, n);
+        if (n > 0) out.accept(c, n);
+    }
+}
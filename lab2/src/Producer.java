@@ -1,17 +1,56 @@
 public final class Producer implements Runnable {
+    private static final int SOURCE_CHUNK = 4096; // elements read from a VectorSource at once
+
     private final double[] a, b;
-    private final BoundedQueue q;
+    private final int from, to; // the producer's share of the vectors: [from, to)
+    private final VectorSource source; // streamed instead of a and b when not null
+    private final DoubleQueue q;
+    private final int batchSize; // products handed to putAll() at once, 1 == plain put()
+
+    public Producer(double[] a, double[] b, DoubleQueue q) {
+        this(a, b, q, 1);
+    }
 
-    public Producer(double[] a, double[] b, BoundedQueue q) {
+    public Producer(double[] a, double[] b, DoubleQueue q, int batchSize) {
+        this(a, b, 0, a.length, q, batchSize);
+    }
+
+    public Producer(double[] a, double[] b, int from, int to, DoubleQueue q, int batchSize) {
         this.a = a;
         this.b = b;
+        this.from = from;
+        this.to = to;
+        this.source = null;
+        this.q = q;
+        this.batchSize = batchSize;
+    }
+
+    // Streams the whole source instead of reading arrays
+    public Producer(VectorSource source, DoubleQueue q, int batchSize) {
+        this.a = null;
+        this.b = null;
+        this.from = 0;
+        this.to = 0;
+        this.source = source;
         this.q = q;
+        this.batchSize = batchSize;
     }
 
     @Override public void run() {
         try {
-            for (int i = 0; i < a.length; i++) {
-                q.put(a[i] * b[i]);
+            if (source != null) {
+                stream();
+            } else if (batchSize > 1) {
+                double[] chunk = new double[batchSize];
+                for (int i = from; i < to; i += batchSize) {
+                    int n = Math.min(batchSize, to - i);
+                    for (int k = 0; k < n; k++) chunk[k] = a[i + k] * b[i + k];
+                    q.putAll(chunk, 0, n);
+                }
+            } else {
+                for (int i = from; i < to; i++) {
+                    q.put(a[i] * b[i]);
+                }
             }
         } catch (InterruptedException ie) {
             Thread.currentThread().interrupt();
@@ -19,4 +58,22 @@ public final class Producer implements Runnable {
             q.close();
         }
     }
-}
\ No newline at end of file
+
+    private void stream() throws InterruptedException {
+        double[] ca = new double[SOURCE_CHUNK];
+        double[] cb = new double[SOURCE_CHUNK];
+        long length = source.length();
+        for (long i = 0; i < length; i += SOURCE_CHUNK) {
+            int n = (int) Math.min(SOURCE_CHUNK, length - i);
+            source.read(i, ca, cb, n);
+            if (batchSize > 1) {
+                for (int k = 0; k < n; k++) ca[k] *= cb[k];
+                for (int k = 0; k < n; k += batchSize) q.putAll(ca, k, Math.min(batchSize, n - k));
+            } else {
+                for (int k = 0; k < n; k++) {
+                    q.put(ca[k] * cb[k]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+// Dot product with P producers and C consumers. The vectors are cut into P contiguous shards and
+// producer i streams shard i into its own SPSC lane; consumer j owns lanes j, j + C, j + 2C, ...
+// and keeps one partial sum per lane. Every lane is summed in element order by a single thread
+// and the partials are added in lane order at the end, so the result is bit-for-bit the same on
+// every run, whatever the thread interleaving. Consumers beyond P would own no lane, so at most
+// P are started.
+public class ShardedPipeline {
+    final double[] a, b;
+    final int producers;
+    final int consumers;
+    final int batchSize;
+    final IntFunction<DoubleQueue> newLane; // capacity -> empty lane
+    final int laneCapacity;
+
+    // filled by run(): partial[i] is the sum of shard i
+    final double[] partial;
+
+    public ShardedPipeline(double[] a, double[] b, int producers, int consumers,
+                           IntFunction<DoubleQueue> newLane, int laneCapacity, int batchSize) {
+        if (producers <= 0 || consumers <= 0) throw new IllegalArgumentException("need a producer and a consumer");
+        this.a = a;
+        this.b = b;
+        this.producers = producers;
+        this.consumers = Math.min(consumers, producers);
+        this.newLane = newLane;
+        this.laneCapacity = laneCapacity;
+        this.batchSize = batchSize;
+        this.partial = new double[producers];
+    }
+
+    // Runs the pipeline to completion and returns the combined sum
+    public double run() throws InterruptedException {
+        DoubleQueue[] lanes = new DoubleQueue[producers];
+        for (int i = 0; i < producers; i++) lanes[i] = newLane.apply(laneCapacity);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < producers; i++) {
+            // shard i is [i * N / P, (i + 1) * N / P)
+            int from = (int) ((long) i * a.length / producers);
+            int to = (int) ((long) (i + 1) * a.length / producers);
+            threads.add(new Thread(new Producer(a, b, from, to, lanes[i], batchSize), "producer-" + i));
+        }
+        for (int j = 0; j < consumers; j++) {
+            threads.add(new Thread(new LaneConsumer(lanes, j), "consumer-" + j));
+        }
+
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join();
+
+        double sum = 0.0;
+        for (double s : partial) sum += s;
+        return sum;
+    }
+
+    // Sums the lanes first, first + consumers, ... each into its own partial
+    private final class LaneConsumer implements Runnable {
+        private final DoubleQueue[] lanes;
+        private final int first;
+
+        LaneConsumer(DoubleQueue[] lanes, int first) {
+            this.lanes = lanes;
+            this.first = first;
+        }
+
+        @Override public void run() {
+            double[] chunk = new double[Math.max(1, batchSize)];
+            try {
+                if (first + consumers >= producers) {
+                    // a single lane: just block on it
+                    double s = 0.0;
+                    int n;
+                    while ((n = lanes[first].drainTo(chunk)) > 0) {
+                        for (int k = 0; k < n; k++) s += chunk[k];
+                    }
+                    partial[first] = s;
+                    return;
+                }
+
+                // several lanes: visit them in turn, taking what each has, until all are closed
+                int open = 0;
+                for (int l = first; l < producers; l += consumers) open++;
+                boolean[] done = new boolean[producers];
+                double[] sums = new double[producers];
+                for (int idle = 0; open > 0; ) {
+                    boolean progress = false;
+                    for (int l = first; l < producers; l += consumers) {
+                        if (done[l]) continue;
+                        int n = lanes[l].poll(chunk);
+                        if (n < 0) {
+                            done[l] = true;
+                            open--;
+                        } else if (n > 0) {
+                            for (int k = 0; k < n; k++) sums[l] += chunk[k];
+                            progress = true;
+                        }
+                    }
+                    if (progress) idle = 0;
+                    else if (++idle > 100) Thread.yield();
+                    else Thread.onSpinWait();
+                }
+                for (int l = first; l < producers; l += consumers) partial[l] = sums[l];
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+// How a Consumer adds up the values it takes from the queue
+public enum Summation {
+    NAIVE,      // sum += v; error grows with the number of values
+    NEUMAIER,   // compensated (improved Kahan) sum; error independent of the count
+    PAIRWISE;   // blocks summed into a binary tree of partial sums; error grows with log(count)
+
+    Accumulator newAccumulator() {
+        switch (this) {
+            case NAIVE:    return new Accumulator.Naive();
+            case NEUMAIER: return new Accumulator.Neumaier();
+            case PAIRWISE: return new Accumulator.Pairwise();
+            default: throw new IllegalStateException("unknown summation");
+        }
+    }
+}
@@ -0,0 +1,8 @@
+// The two equally long vectors a producer multiplies, read a chunk at a time so they don't have
+// to be on the heap as a whole. Implementations are not thread-safe: one reader per instance.
+public interface VectorSource {
+    long length();
+
+    // Copies a[from .. from + len) into a and b[from .. from + len) into b, starting at index 0
+    void read(long from, double[] a, double[] b, int len);
+}
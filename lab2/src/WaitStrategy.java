@@ -0,0 +1,24 @@
+import java.util.concurrent.locks.ReentrantLock;
+
+// How a side of a DoubleRingBuffer or BoundedQueue waits for the other one when it is full or empty
+public enum WaitStrategy {
+    BUSY_SPIN,   // burn the core polling; lowest latency, only for dedicated cores
+    YIELD,       // spin a little, then Thread.yield() between polls
+    PARK,        // sleep in short timed parks between polls; nobody has to wake the waiter
+    BLOCK;       // Condition.await() until the other side signals
+
+    Waiter newWaiter() {
+        return newWaiter(new ReentrantLock());
+    }
+
+    // BLOCK waits on a condition of the given lock; the other strategies don't use it
+    Waiter newWaiter(ReentrantLock lock) {
+        switch (this) {
+            case BUSY_SPIN: return new Waiter.Spin();
+            case YIELD:     return new Waiter.SpinYield();
+            case PARK:      return new Waiter.Park();
+            case BLOCK:     return new Waiter.Block(lock);
+            default: throw new IllegalStateException("unknown wait strategy");
+        }
+    }
+}
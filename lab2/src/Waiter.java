@@ -0,0 +1,91 @@
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+// One waiting side of a queue: await() returns once ready holds; signal() is called by the other
+// side after publishing progress and only costs something for strategies that sleep until woken.
+interface Waiter {
+    void await(BooleanSupplier ready) throws InterruptedException;
+
+    void signal();
+
+    final class Spin implements Waiter {
+        @Override public void await(BooleanSupplier ready) {
+            while (!ready.getAsBoolean()) Thread.onSpinWait();
+        }
+
+        @Override public void signal() {}
+    }
+
+    final class SpinYield implements Waiter {
+        private static final int SPINS = 100;
+
+        @Override public void await(BooleanSupplier ready) {
+            for (int n = 0; !ready.getAsBoolean(); ++n) {
+                if (n < SPINS) Thread.onSpinWait();
+                else Thread.yield();
+            }
+        }
+
+        @Override public void signal() {}
+    }
+
+    final class Park implements Waiter {
+        private static final long PARK_NANOS = 50_000;
+
+        @Override public void await(BooleanSupplier ready) throws InterruptedException {
+            while (!ready.getAsBoolean()) {
+                LockSupport.parkNanos(PARK_NANOS);
+                if (Thread.interrupted()) throw new InterruptedException();
+            }
+        }
+
+        @Override public void signal() {}
+    }
+
+    final class Block implements Waiter {
+        private final ReentrantLock lock;
+        private final Condition changed;
+        private volatile int waiters = 0;
+
+        Block() {
+            this(new ReentrantLock());
+        }
+
+        // Waits on a condition of the given lock, e.g. the one guarding the state ready reads
+        Block(ReentrantLock lock) {
+            this.lock = lock;
+            this.changed = lock.newCondition();
+        }
+
+        @Override public void await(BooleanSupplier ready) throws InterruptedException {
+            if (ready.getAsBoolean()) return;
+            lock.lock();
+            try {
+                // announce ourselves before the last check, so a signal() that misses the check sees us
+                waiters++;
+                try {
+                    while (!ready.getAsBoolean()) changed.await();
+                } finally {
+                    waiters--;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override public void signal() {
+            // the caller published with a release store; keep the read of waiters after it
+            VarHandle.fullFence();
+            if (waiters == 0) return;
+            lock.lock();
+            try {
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
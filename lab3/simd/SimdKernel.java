@@ -0,0 +1,85 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// Vector API versions of ComputeTask's inner loops. Kept out of src/ and loaded by name in
+// Kernel, so the scalar kernel builds and runs without the incubator module.
+final class SimdKernel implements SimdOps {
+    private static final VectorSpecies<Double> S = DoubleVector.SPECIES_PREFERRED;
+    private static final int L = S.length();
+
+    @Override public int lanes() {
+        return L;
+    }
+
+    @Override public double dot(double[] a, int ai, double[] b, int bi, int n) {
+        DoubleVector acc0 = DoubleVector.zero(S), acc1 = DoubleVector.zero(S);
+        int k = 0;
+        for (; k + 2 * L <= n; k += 2 * L) {
+            acc0 = DoubleVector.fromArray(S, a, ai + k).fma(DoubleVector.fromArray(S, b, bi + k), acc0);
+            acc1 = DoubleVector.fromArray(S, a, ai + k + L).fma(DoubleVector.fromArray(S, b, bi + k + L), acc1);
+        }
+        for (; k + L <= n; k += L) {
+            acc0 = DoubleVector.fromArray(S, a, ai + k).fma(DoubleVector.fromArray(S, b, bi + k), acc0);
+        }
+        double sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+        for (; k < n; k++) sum = Math.fma(a[ai + k], b[bi + k], sum);
+        return sum;
+    }
+
+    // two rows by two vectors of C held in registers, A(i, k) broadcast against a vector of a panel row
+    @Override public int multiplyTile(Matrix A, Matrix C, double[] panel, int i0, int i1, int j0, int j1, int k0, int k1) {
+        double[] a = A.data, c = C.data;
+        int as = A.colStride;
+        int w = j1 - j0;
+        int covered = w / L * L;
+        int i = i0;
+        for (; i + 1 < i1; i += 2) {
+            int a0 = A.index(i, 0), a1 = A.index(i + 1, 0);
+            int c0 = C.index(i, j0), c1 = C.index(i + 1, j0);
+            int j = 0;
+            for (; j + 2 * L <= covered; j += 2 * L) {
+                DoubleVector c00 = DoubleVector.fromArray(S, c, c0 + j);
+                DoubleVector c01 = DoubleVector.fromArray(S, c, c0 + j + L);
+                DoubleVector c10 = DoubleVector.fromArray(S, c, c1 + j);
+                DoubleVector c11 = DoubleVector.fromArray(S, c, c1 + j + L);
+                for (int k = k0, b = j; k < k1; k++, b += w) {
+                    DoubleVector b0 = DoubleVector.fromArray(S, panel, b);
+                    DoubleVector b1 = DoubleVector.fromArray(S, panel, b + L);
+                    DoubleVector x0 = DoubleVector.broadcast(S, a[a0 + k * as]);
+                    DoubleVector x1 = DoubleVector.broadcast(S, a[a1 + k * as]);
+                    c00 = b0.fma(x0, c00);
+                    c01 = b1.fma(x0, c01);
+                    c10 = b0.fma(x1, c10);
+                    c11 = b1.fma(x1, c11);
+                }
+                c00.intoArray(c, c0 + j);
+                c01.intoArray(c, c0 + j + L);
+                c10.intoArray(c, c1 + j);
+                c11.intoArray(c, c1 + j + L);
+            }
+            for (; j < covered; j += L) {
+                DoubleVector c00 = DoubleVector.fromArray(S, c, c0 + j);
+                DoubleVector c10 = DoubleVector.fromArray(S, c, c1 + j);
+                for (int k = k0, b = j; k < k1; k++, b += w) {
+                    DoubleVector b0 = DoubleVector.fromArray(S, panel, b);
+                    c00 = b0.fma(DoubleVector.broadcast(S, a[a0 + k * as]), c00);
+                    c10 = b0.fma(DoubleVector.broadcast(S, a[a1 + k * as]), c10);
+                }
+                c00.intoArray(c, c0 + j);
+                c10.intoArray(c, c1 + j);
+            }
+        }
+        if (i < i1) {
+            int a0 = A.index(i, 0), c0 = C.index(i, j0);
+            for (int j = 0; j < covered; j += L) {
+                DoubleVector c00 = DoubleVector.fromArray(S, c, c0 + j);
+                for (int k = k0, b = j; k < k1; k++, b += w) {
+                    c00 = DoubleVector.fromArray(S, panel, b).fma(DoubleVector.broadcast(S, a[a0 + k * as]), c00);
+                }
+                c00.intoArray(c, c0 + j);
+            }
+        }
+        return covered;
+    }
+}
@@ -1,20 +1,61 @@
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ComputeTask implements Callable<Void> {
-    private final double[][] A;
-    private final double[][] B;
-    private final double[][] C;
+    // BLOCKED: C is cut into TILE_ROWS x TILE_COLS tiles; the tiles of one column of tiles share
+    // the packed TILE_DEPTH x TILE_COLS panel of B (256 KiB, stays in L2)
+    static final int TILE_ROWS = 64;
+    static final int TILE_COLS = 128;
+    static final int TILE_DEPTH = 256;
+
+    // number of BLOCKED tiles of an m x p result
+    static int tiles(int m, int p) {
+        return ((m + TILE_ROWS - 1) / TILE_ROWS) * ((p + TILE_COLS - 1) / TILE_COLS);
+    }
+
+    private final Matrix A;
+    private final Matrix B;
+    private final Matrix C;
     private final int startIdx;
     private final int endIdx;
     private final int p;
     private final int m;
     private final int threadId;
     private final Strategy strategy;
+    private final Kernel kernel;
+    // SIMD per-element strategies: B transposed into contiguous rows, so a column of B is a
+    // contiguous row like the row of A it is dotted with (null otherwise)
+    private final Matrix BT;
+    // DYNAMIC: the next unclaimed tile, shared by all tasks, and the tiles each task claimed
+    private final AtomicInteger nextTile;
+    private final int[] claimed;
 
-    public ComputeTask(double[][] A, double[][] B, double[][] C,
+    public ComputeTask(Matrix A, Matrix B, Matrix C,
                        int startIdx, int endIdx,
                        int m, int p, int threadId,
                        Strategy strategy) {
+        this(A, B, C, startIdx, endIdx, m, p, threadId, strategy, Kernel.SCALAR, null);
+    }
+
+    public ComputeTask(Matrix A, Matrix B, Matrix C,
+                       int startIdx, int endIdx,
+                       int m, int p, int threadId,
+                       Strategy strategy, Kernel kernel, Matrix BT) {
+        this(A, B, C, startIdx, endIdx, m, p, threadId, strategy, kernel, BT, null, null);
+    }
+
+    // DYNAMIC: claims tiles below `tiles` from nextTile until none are left, counting them in claimed[threadId]
+    public ComputeTask(Matrix A, Matrix B, Matrix C, int tiles,
+                       AtomicInteger nextTile, int[] claimed,
+                       int m, int p, int threadId, Kernel kernel) {
+        this(A, B, C, 0, tiles, m, p, threadId, Strategy.DYNAMIC, kernel, null, nextTile, claimed);
+    }
+
+    private ComputeTask(Matrix A, Matrix B, Matrix C,
+                        int startIdx, int endIdx,
+                        int m, int p, int threadId,
+                        Strategy strategy, Kernel kernel, Matrix BT,
+                        AtomicInteger nextTile, int[] claimed) {
         this.A = A;
         this.B = B;
         this.C = C;
@@ -24,6 +65,10 @@ public class ComputeTask implements Callable<Void> {
         this.p = p;
         this.threadId = threadId;
         this.strategy = strategy;
+        this.kernel = kernel;
+        this.BT = BT;
+        this.nextTile = nextTile;
+        this.claimed = claimed;
     }
 
     @Override
@@ -33,15 +78,20 @@ public class ComputeTask implements Callable<Void> {
             case ROW_CHUNKS -> computeRowChunks();
             case COL_CHUNKS -> computeColChunks();
             case STRIDED -> computeStrided(total);
+            case BLOCKED -> computeBlocked();
+            case DYNAMIC -> computeDynamic();
         }
         return null;
     }
 
     private double computeElement(int i, int j) {
-        int n = A[0].length;
+        int n = A.cols;
+        if (BT != null) return Kernel.simd().dot(A.data, A.index(i, 0), BT.data, BT.index(j, 0), n);
+        double[] a = A.data, b = B.data;
+        int ai = A.index(i, 0), bj = B.index(0, j);
         double sum = 0.0;
-        for (int k = 0; k < n; k++) {
-            sum += A[i][k] * B[k][j];
+        for (int k = 0; k < n; k++, ai += A.colStride, bj += B.rowStride) {
+            sum += a[ai] * b[bj];
         }
 //        System.out.printf("Thread %d -> C[%d,%d]%n", threadId, i, j);
         return sum;
@@ -51,7 +101,7 @@ public class ComputeTask implements Callable<Void> {
         for (int idx = startIdx; idx < endIdx; idx++) {
             int i = idx / p;
             int j = idx % p;
-            C[i][j] = computeElement(i, j);
+            C.set(i, j, computeElement(i, j));
         }
     }
 
@@ -59,7 +109,7 @@ public class ComputeTask implements Callable<Void> {
         for (int idx = startIdx; idx < endIdx; idx++) {
             int j = idx / m;
             int i = idx % m;
-            C[i][j] = computeElement(i, j);
+            C.set(i, j, computeElement(i, j));
         }
     }
 
@@ -67,7 +117,140 @@ public class ComputeTask implements Callable<Void> {
         for (int idx = startIdx; idx < total; idx += endIdx) {
             int i = idx / p;
             int j = idx % p;
-            C[i][j] = computeElement(i, j);
+            C.set(i, j, computeElement(i, j));
+        }
+    }
+
+    // startIdx..endIdx are tile indices, column of tiles major: tile t covers tile row t % tilesI
+    // of tile column t / tilesI, so consecutive tiles reuse the same packed panel of B
+    private void computeBlocked() {
+        int n = A.cols;
+        int tilesI = (m + TILE_ROWS - 1) / TILE_ROWS;
+        double[] panel = new double[Math.min(TILE_DEPTH, n) * Math.min(TILE_COLS, p)];
+        for (int idx = startIdx; idx < endIdx; ) {
+            int jt = idx / tilesI;
+            int groupEnd = Math.min(endIdx, (jt + 1) * tilesI);
+            int j0 = jt * TILE_COLS;
+            int j1 = Math.min(p, j0 + TILE_COLS);
+            // k panels in increasing order, so every C[i][j] adds its terms in the same order as computeElement
+            for (int k0 = 0; k0 < n; k0 += TILE_DEPTH) {
+                int k1 = Math.min(n, k0 + TILE_DEPTH);
+                packPanel(panel, k0, k1, j0, j1);
+                for (int t = idx; t < groupEnd; t++) {
+                    int i0 = (t % tilesI) * TILE_ROWS;
+                    tile(panel, i0, Math.min(m, i0 + TILE_ROWS), j0, j1, k0, k1);
+                }
+            }
+            idx = groupEnd;
+        }
+    }
+
+    // Tiles numbered as in computeBlocked, claimed one at a time: a thread that falls behind
+    // (descheduled, slower core) simply claims fewer. Each tile packs its own panels; that copy
+    // is TILE_ROWS times less work than the multiplication it feeds. The count goes into claimed
+    // once at the end: the slots of neighbouring threads share a cache line.
+    private void computeDynamic() {
+        int n = A.cols;
+        int tilesI = (m + TILE_ROWS - 1) / TILE_ROWS;
+        double[] panel = new double[Math.min(TILE_DEPTH, n) * Math.min(TILE_COLS, p)];
+        int t, count = 0;
+        while ((t = nextTile.getAndIncrement()) < endIdx) {
+            int i0 = (t % tilesI) * TILE_ROWS;
+            int j0 = (t / tilesI) * TILE_COLS;
+            int i1 = Math.min(m, i0 + TILE_ROWS);
+            int j1 = Math.min(p, j0 + TILE_COLS);
+            for (int k0 = 0; k0 < n; k0 += TILE_DEPTH) {
+                int k1 = Math.min(n, k0 + TILE_DEPTH);
+                packPanel(panel, k0, k1, j0, j1);
+                tile(panel, i0, i1, j0, j1, k0, k1);
+            }
+            count++;
+        }
+        claimed[threadId] = count;
+    }
+
+    // One tile's share of a packed panel, with the SIMD kernel first when it is selected
+    private void tile(double[] panel, int i0, int i1, int j0, int j1, int k0, int k1) {
+        int from = j0;
+        if (kernel == Kernel.SIMD && C.colStride == 1) {
+            from += Kernel.simd().multiplyTile(A, C, panel, i0, i1, j0, j1, k0, k1);
+        }
+        multiplyTile(panel, i0, i1, j0, from, j1, k0, k1);
+    }
+
+    // panel[(k - k0) * w + (j - j0)] = B(k, j): the rows of the panel one after another, whatever
+    // B's strides are
+    private void packPanel(double[] panel, int k0, int k1, int j0, int j1) {
+        int w = j1 - j0;
+        for (int k = k0; k < k1; k++) {
+            if (B.colStride == 1) {
+                System.arraycopy(B.data, B.index(k, j0), panel, (k - k0) * w, w);
+            } else {
+                for (int j = j0; j < j1; j++) panel[(k - k0) * w + (j - j0)] = B.get(k, j);
+            }
+        }
+    }
+
+    // C[i0..i1)[jFrom..j1) += A[i0..i1)[k0..k1) * panel (whose first column is j0), two rows by
+    // four columns of C at a time kept in registers over the whole k range; leftover rows and
+    // columns one element at a time. k is innermost, not the i-k-j order with a contiguous j
+    // loop: that order loads and stores C once per k, and the JIT does not vectorize it well
+    // enough to make up for it. On 900x900, i-k-j ran at 1.5-3.0 GFLOP/s and this kernel at
+    // 3.3-3.9 GFLOP/s. Stepping through the panel by w stays in L1/L2 because the panel is
+    // packed. The SIMD kernel uses the same order with vector columns.
+    private void multiplyTile(double[] panel, int i0, int i1, int j0, int jFrom, int j1, int k0, int k1) {
+        double[] a = A.data, c = C.data;
+        int as = A.colStride, cs = C.colStride;
+        int w = j1 - j0;
+        int i = i0;
+        for (; i + 1 < i1; i += 2) {
+            int a0 = A.index(i, 0), a1 = A.index(i + 1, 0);
+            int c0 = C.index(i, 0), c1 = C.index(i + 1, 0);
+            int j = jFrom;
+            for (; j + 3 < j1; j += 4) {
+                int x = c0 + j * cs, y = c1 + j * cs;
+                double c00 = c[x], c01 = c[x + cs], c02 = c[x + 2 * cs], c03 = c[x + 3 * cs];
+                double c10 = c[y], c11 = c[y + cs], c12 = c[y + 2 * cs], c13 = c[y + 3 * cs];
+                for (int k = k0, b = j - j0; k < k1; k++, b += w) {
+                    double x0 = a[a0 + k * as], x1 = a[a1 + k * as];
+                    double b0 = panel[b], b1 = panel[b + 1], b2 = panel[b + 2], b3 = panel[b + 3];
+                    c00 += x0 * b0;
+                    c01 += x0 * b1;
+                    c02 += x0 * b2;
+                    c03 += x0 * b3;
+                    c10 += x1 * b0;
+                    c11 += x1 * b1;
+                    c12 += x1 * b2;
+                    c13 += x1 * b3;
+                }
+                c[x] = c00;
+                c[x + cs] = c01;
+                c[x + 2 * cs] = c02;
+                c[x + 3 * cs] = c03;
+                c[y] = c10;
+                c[y + cs] = c11;
+                c[y + 2 * cs] = c12;
+                c[y + 3 * cs] = c13;
+            }
+            for (; j < j1; j++) {
+                double s0 = c[c0 + j * cs], s1 = c[c1 + j * cs];
+                for (int k = k0, b = j - j0; k < k1; k++, b += w) {
+                    s0 += a[a0 + k * as] * panel[b];
+                    s1 += a[a1 + k * as] * panel[b];
+                }
+                c[c0 + j * cs] = s0;
+                c[c1 + j * cs] = s1;
+            }
+        }
+        if (i < i1) {
+            int a0 = A.index(i, 0), c0 = C.index(i, 0);
+            for (int j = jFrom; j < j1; j++) {
+                double s = c[c0 + j * cs];
+                for (int k = k0, b = j - j0; k < k1; k++, b += w) {
+                    s += a[a0 + k * as] * panel[b];
+                }
+                c[c0 + j * cs] = s;
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,28 @@
+// Inner loops used by the strategies, independent of how the Strategy splits the work
+public enum Kernel {
+    SCALAR,
+    SIMD;       // Vector API FMA (SimdKernel, under simd/); needs --add-modules jdk.incubator.vector
+
+    // SimdKernel, looked up by name so nothing in src/ refers to the Vector API. Null unless the
+    // module is loaded, simd/ was compiled in and the preferred species has at least two lanes.
+    private static final SimdOps SIMD_OPS = loadSimd();
+
+    static SimdOps simd() {
+        return SIMD_OPS;
+    }
+
+    // SIMD only when its loops could be loaded
+    Kernel resolve() {
+        return this == SIMD && SIMD_OPS != null ? SIMD : SCALAR;
+    }
+
+    private static SimdOps loadSimd() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return null;
+        try {
+            SimdOps ops = (SimdOps) Class.forName("SimdKernel").getDeclaredConstructor().newInstance();
+            return ops.lanes() >= 2 ? ops : null;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
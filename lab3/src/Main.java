@@ -1,35 +1,59 @@
+import java.util.Arrays;
 import java.util.Random;
 
 public class Main {
 
-    public static double[][] randMat(int rows, int cols, Random rnd) {
-        double[][] M = new double[rows][cols];
+    public static Matrix randMat(int rows, int cols, Random rnd) {
+        Matrix M = Matrix.zeros(rows, cols);
         for (int i = 0; i < rows; i++)
             for (int j = 0; j < cols; j++)
-                M[i][j] = rnd.nextDouble() * 2 - 1; // [-1,1)
+                M.set(i, j, rnd.nextDouble() * 2 - 1); // [-1,1)
         return M;
     }
 
+    public static double maxAbsDiff(Matrix X, Matrix Y) {
+        double max = 0.0;
+        for (int i = 0; i < X.rows(); i++)
+            for (int j = 0; j < X.cols(); j++)
+                max = Math.max(max, Math.abs(X.get(i, j) - Y.get(i, j)));
+        return max;
+    }
+
     public static void main(String[] args) throws Exception {
         // === Configuration ===
         int m = 900, n = 900, p = 900;
         int threads = 4;
-        Strategy strategy = Strategy.COL_CHUNKS;
+        Strategy[] strategies = Strategy.values();
+        Kernel[] kernels = Kernel.values(); // SIMD needs simd/ compiled in and --add-modules jdk.incubator.vector, else runs as SCALAR
         int runs = 5;
         // =====================
 
-        System.out.printf(
-                "Matrix %dx%d * %dx%d | threads=%d | strategy=%s%n",
-                m, n, n, p, threads, strategy);
+        double flops = 2.0 * m * n * p;
+        int cores = Math.min(threads, Runtime.getRuntime().availableProcessors());
 
         Random rnd = new Random(42);
-        double[][] A = randMat(m, n, rnd);
-        double[][] B = randMat(n, p, rnd);
+        Matrix A = randMat(m, n, rnd);
+        Matrix B = randMat(n, p, rnd);
+
+        Matrix reference = null;
+        for (Kernel kernel : kernels) {
+            for (Strategy strategy : strategies) {
+                System.out.printf(
+                        "Matrix %dx%d * %dx%d | threads=%d | strategy=%s | kernel=%s%n",
+                        m, n, n, p, threads, strategy, kernel.resolve());
 
-        for (int run = 1; run <= runs; run++) {
-            Result r = MatrixMultiplier.multiply(A, B, threads, strategy);
+                for (int run = 1; run <= runs; run++) {
+                    Result r = MatrixMultiplier.multiply(A, B, threads, strategy, kernel);
 
-            System.out.printf("%.3f ms%n", r.nanos / 1e6);
+                    double gflops = flops / r.nanos;
+                    System.out.printf("%.3f ms  %.2f GFLOP/s  %.2f GFLOP/s/core%n",
+                            r.nanos / 1e6, gflops, gflops / cores);
+                    if (r.layoutNanos > 0) System.out.printf("  + %.3f ms copying B transposed%n", r.layoutNanos / 1e6);
+                    if (run == runs && r.work != null) System.out.println("work per thread: " + Arrays.toString(r.work));
+                    if (reference == null) reference = r.C;
+                    else if (run == runs) System.out.printf("max |C - C_%s| = %.3e%n", strategies[0], maxAbsDiff(reference, r.C));
+                }
+            }
         }
     }
-}
\ No newline at end of file
+}
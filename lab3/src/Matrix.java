@@ -0,0 +1,78 @@
+// Dense matrix over one flat double[]. Element (i, j) lives at offset + i * rowStride + j * colStride,
+// so a submatrix or the transpose is a view sharing the array: only the offset and strides differ.
+// Matrices made by zeros()/of() are row-major with no gaps (colStride == 1, rowStride == cols).
+public final class Matrix {
+    final double[] data;
+    final int rows, cols;
+    final int offset;
+    final int rowStride, colStride;
+
+    private Matrix(double[] data, int rows, int cols, int offset, int rowStride, int colStride) {
+        this.data = data;
+        this.rows = rows;
+        this.cols = cols;
+        this.offset = offset;
+        this.rowStride = rowStride;
+        this.colStride = colStride;
+    }
+
+    public static Matrix zeros(int rows, int cols) {
+        return new Matrix(new double[rows * cols], rows, cols, 0, cols, 1);
+    }
+
+    public static Matrix of(double[][] rowsOf) {
+        int rows = rowsOf.length, cols = rowsOf[0].length;
+        Matrix M = zeros(rows, cols);
+        for (int i = 0; i < rows; i++) System.arraycopy(rowsOf[i], 0, M.data, i * cols, cols);
+        return M;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    int index(int i, int j) {
+        return offset + i * rowStride + j * colStride;
+    }
+
+    public double get(int i, int j) {
+        return data[index(i, j)];
+    }
+
+    public void set(int i, int j, double v) {
+        data[index(i, j)] = v;
+    }
+
+    // rows x cols block starting at (r0, c0), sharing this matrix's storage
+    public Matrix view(int r0, int c0, int rows, int cols) {
+        if (r0 < 0 || c0 < 0 || rows < 0 || cols < 0 || r0 + rows > this.rows || c0 + cols > this.cols)
+            throw new IndexOutOfBoundsException("view out of bounds");
+        return new Matrix(data, rows, cols, index(r0, c0), rowStride, colStride);
+    }
+
+    // The transpose, sharing this matrix's storage
+    public Matrix transpose() {
+        return new Matrix(data, cols, rows, offset, colStride, rowStride);
+    }
+
+    // Row-major, gap-free copy (of a view, too)
+    public Matrix copy() {
+        Matrix M = zeros(rows, cols);
+        for (int i = 0; i < rows; i++)
+            for (int j = 0; j < cols; j++)
+                M.data[i * cols + j] = get(i, j);
+        return M;
+    }
+
+    public double[][] toArray() {
+        double[][] M = new double[rows][cols];
+        for (int i = 0; i < rows; i++)
+            for (int j = 0; j < cols; j++)
+                M[i][j] = get(i, j);
+        return M;
+    }
+}
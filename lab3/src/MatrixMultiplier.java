@@ -1,18 +1,40 @@
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MatrixMultiplier {
 
-    public static Result multiply(double[][] A, double[][] B, int threads,
+    public static Result multiply(Matrix A, Matrix B, int threads,
                                   Strategy strategy) throws InterruptedException {
-        int m = A.length, n = A[0].length, p = B[0].length;
-        if (B.length != n)
+        return multiply(A, B, threads, strategy, Kernel.SCALAR);
+    }
+
+    // kernel falls back to SCALAR when SIMD is not available (see Kernel.resolve)
+    public static Result multiply(Matrix A, Matrix B, int threads,
+                                  Strategy strategy, Kernel kernel) throws InterruptedException {
+        int m = A.rows, n = A.cols, p = B.cols;
+        if (B.rows != n)
             throw new IllegalArgumentException("Incompatible matrix shapes");
+        kernel = kernel.resolve();
+        if (strategy == Strategy.STRASSEN)
+            return StrassenMultiplier.multiply(A, B, threads, StrassenMultiplier.DEFAULT_CROSSOVER, kernel);
 
-        double[][] C = new double[m][p];
+        Matrix C = Matrix.zeros(m, p);
         int total = m * p;
         ExecutorService pool = Executors.newFixedThreadPool(threads);
         List<Callable<Void>> jobs = new ArrayList<>();
+        int[] work = new int[threads];
+
+        // the SIMD dot product of the per-element strategies wants rows of A and columns of B
+        // contiguous: copy A if it is a strided view and B transposed (timed on its own)
+        Matrix BT = null;
+        long layoutNanos = 0;
+        if (kernel == Kernel.SIMD && strategy != Strategy.BLOCKED && strategy != Strategy.DYNAMIC) {
+            long l0 = System.nanoTime();
+            if (A.colStride != 1) A = A.copy();
+            BT = B.transpose().copy();
+            layoutNanos = System.nanoTime() - l0;
+        }
 
         switch (strategy) {
             case ROW_CHUNKS, COL_CHUNKS -> {
@@ -22,7 +44,8 @@ public class MatrixMultiplier {
                 for (int t = 0; t < threads; t++) {
                     int len = base + (t < rem ? 1 : 0);
                     jobs.add(new ComputeTask(A, B, C, start, start + len,
-                            m, p , t, strategy));
+                            m, p , t, strategy, kernel, BT));
+                    work[t] = len;
                     start += len;
                 }
             }
@@ -30,7 +53,30 @@ public class MatrixMultiplier {
                 for (int t = 0; t < threads; t++) {
                     // For STRIDED, we pass total as endIdx so call() knows the step
                     jobs.add(new ComputeTask(A, B, C, t, threads,
-                            m, p, t, strategy));
+                            m, p, t, strategy, kernel, BT));
+                    work[t] = (total - t + threads - 1) / threads;
+                }
+            }
+            case BLOCKED -> {
+                // like ROW_CHUNKS, but over tiles of C
+                int tiles = ComputeTask.tiles(m, p);
+                int base = tiles / threads;
+                int rem = tiles % threads;
+                int start = 0;
+                for (int t = 0; t < threads; t++) {
+                    int len = base + (t < rem ? 1 : 0);
+                    jobs.add(new ComputeTask(A, B, C, start, start + len,
+                            m, p, t, strategy, kernel, BT));
+                    work[t] = len;
+                    start += len;
+                }
+            }
+            case DYNAMIC -> {
+                // every task claims tiles until they run out; work[t] counts its claims
+                AtomicInteger nextTile = new AtomicInteger();
+                for (int t = 0; t < threads; t++) {
+                    jobs.add(new ComputeTask(A, B, C, ComputeTask.tiles(m, p), nextTile, work,
+                            m, p, t, kernel));
                 }
             }
         }
@@ -41,6 +87,6 @@ public class MatrixMultiplier {
         pool.awaitTermination(1, TimeUnit.HOURS);
         long t1 = System.nanoTime();
 
-        return new Result(C, t1 - t0);
+        return new Result(C, t1 - t0, work, layoutNanos);
     }
 }
\ No newline at end of file
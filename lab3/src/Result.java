@@ -1,9 +1,24 @@
 public class Result {
-    public final double[][] C;
+    public final Matrix C;
     public final long nanos;
+    // units of work each thread did: elements for the per-element strategies, tiles for BLOCKED
+    // and DYNAMIC; null for STRASSEN, whose ForkJoin pool balances itself
+    public final int[] work;
+    // copying operands into the layout the kernel wants (SIMD's transposed B), not part of nanos
+    public final long layoutNanos;
 
-    public Result(double[][] C, long nanos) {
+    public Result(Matrix C, long nanos) {
+        this(C, nanos, null);
+    }
+
+    public Result(Matrix C, long nanos, int[] work) {
+        this(C, nanos, work, 0);
+    }
+
+    public Result(Matrix C, long nanos, int[] work, long layoutNanos) {
         this.C = C;
         this.nanos = nanos;
+        this.work = work;
+        this.layoutNanos = layoutNanos;
     }
 }
\ No newline at end of file
@@ -0,0 +1,13 @@
+// The inner loops of Kernel.SIMD. The implementation (SimdKernel, under simd/) uses the incubating
+// Vector API and is loaded by name in Kernel, so src/ compiles and runs without the module.
+interface SimdOps {
+    // lanes of a double vector; SIMD is only used with at least two
+    int lanes();
+
+    // sum of a[ai + k] * b[bi + k] over k < n, both rows contiguous
+    double dot(double[] a, int ai, double[] b, int bi, int n);
+
+    // ComputeTask.multiplyTile for the leading columns that fill whole vectors; C's rows must be
+    // contiguous. Returns how many columns from j0 on it covered, for every row.
+    int multiplyTile(Matrix A, Matrix C, double[] panel, int i0, int i1, int j0, int j1, int k0, int k1);
+}
@@ -0,0 +1,140 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Strassen's algorithm: seven half-size products instead of eight per level, forked as
+// ForkJoin tasks. Blocks no larger than the crossover (in every dimension) go to the classic
+// BLOCKED kernel. Sizes are padded with zeros to c * 2^d, c <= crossover, so that every
+// level halves evenly; at most 2^d - 1 zero rows/columns per dimension.
+public class StrassenMultiplier {
+
+    public static final int DEFAULT_CROSSOVER = 256;
+
+    public static Result multiply(Matrix A, Matrix B, int threads, int crossover) {
+        return multiply(A, B, threads, crossover, Kernel.SCALAR);
+    }
+
+    // kernel is the one the BLOCKED base case runs with
+    public static Result multiply(Matrix A, Matrix B, int threads, int crossover, Kernel kernel) {
+        int m = A.rows, n = A.cols, p = B.cols;
+        if (B.rows != n)
+            throw new IllegalArgumentException("Incompatible matrix shapes");
+
+        long t0 = System.nanoTime();
+        int levels = 0;
+        while (ceilDiv(Math.max(m, Math.max(n, p)), 1 << levels) > crossover) levels++;
+        int mp = padTo(m, levels), np = padTo(n, levels), pp = padTo(p, levels);
+        Kernel base = kernel.resolve();
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Matrix C;
+        try {
+            C = pool.invoke(new StrassenTask(pad(A, mp, np), pad(B, np, pp), crossover, base));
+        } finally {
+            pool.shutdown();
+        }
+        if (mp != m || pp != p) C = C.view(0, 0, m, p).copy();
+        long t1 = System.nanoTime();
+
+        return new Result(C, t1 - t0);
+    }
+
+    private static int ceilDiv(int x, int y) {
+        return (x + y - 1) / y;
+    }
+
+    // smallest multiple of 2^levels >= size
+    private static int padTo(int size, int levels) {
+        return ceilDiv(size, 1 << levels) << levels;
+    }
+
+    private static Matrix pad(Matrix M, int rows, int cols) {
+        if (rows == M.rows && cols == M.cols) return M;
+        Matrix P = Matrix.zeros(rows, cols);
+        addInto(P.view(0, 0, M.rows, M.cols), M, 1);
+        return P;
+    }
+
+    // Z = X + sign * Y, as a new row-major matrix
+    private static Matrix sum(Matrix X, Matrix Y, double sign) {
+        Matrix Z = Matrix.zeros(X.rows, X.cols);
+        for (int i = 0; i < X.rows; i++) {
+            int x = X.index(i, 0), y = Y.index(i, 0), z = i * Z.cols;
+            for (int j = 0; j < X.cols; j++, x += X.colStride, y += Y.colStride) {
+                Z.data[z + j] = X.data[x] + sign * Y.data[y];
+            }
+        }
+        return Z;
+    }
+
+    // D += sign * S
+    private static void addInto(Matrix D, Matrix S, double sign) {
+        for (int i = 0; i < D.rows; i++) {
+            int d = D.index(i, 0), s = S.index(i, 0);
+            for (int j = 0; j < D.cols; j++, d += D.colStride, s += S.colStride) {
+                D.data[d] += sign * S.data[s];
+            }
+        }
+    }
+
+    @SuppressWarnings("serial") // never serialized
+    private static class StrassenTask extends RecursiveTask<Matrix> {
+        private final Matrix A, B;
+        private final int crossover;
+        private final Kernel kernel;
+
+        StrassenTask(Matrix A, Matrix B, int crossover, Kernel kernel) {
+            this.A = A;
+            this.B = B;
+            this.crossover = crossover;
+            this.kernel = kernel;
+        }
+
+        @Override
+        protected Matrix compute() {
+            int m = A.rows, n = A.cols, p = B.cols;
+            if (Math.max(m, Math.max(n, p)) <= crossover || m % 2 != 0 || n % 2 != 0 || p % 2 != 0) {
+                Matrix C = Matrix.zeros(m, p);
+                new ComputeTask(A, B, C, 0, ComputeTask.tiles(m, p), m, p, 0, Strategy.BLOCKED, kernel, null).call();
+                return C;
+            }
+
+            int h = m / 2, k = n / 2, w = p / 2;
+            Matrix A11 = A.view(0, 0, h, k), A12 = A.view(0, k, h, k);
+            Matrix A21 = A.view(h, 0, h, k), A22 = A.view(h, k, h, k);
+            Matrix B11 = B.view(0, 0, k, w), B12 = B.view(0, w, k, w);
+            Matrix B21 = B.view(k, 0, k, w), B22 = B.view(k, w, k, w);
+
+            StrassenTask[] t = {
+                    new StrassenTask(sum(A11, A22, 1), sum(B11, B22, 1), crossover, kernel), // M1
+                    new StrassenTask(sum(A21, A22, 1), B11, crossover, kernel),             // M2
+                    new StrassenTask(A11, sum(B12, B22, -1), crossover, kernel),            // M3
+                    new StrassenTask(A22, sum(B21, B11, -1), crossover, kernel),            // M4
+                    new StrassenTask(sum(A11, A12, 1), B22, crossover, kernel),             // M5
+                    new StrassenTask(sum(A21, A11, -1), sum(B11, B12, 1), crossover, kernel),// M6
+                    new StrassenTask(sum(A12, A22, -1), sum(B21, B22, 1), crossover, kernel) // M7
+            };
+            // fork six, compute the last one in this thread
+            for (int i = 0; i < 6; i++) t[i].fork();
+            Matrix M7 = t[6].compute();
+            Matrix M1 = t[0].join(), M2 = t[1].join(), M3 = t[2].join();
+            Matrix M4 = t[3].join(), M5 = t[4].join(), M6 = t[5].join();
+
+            Matrix C = Matrix.zeros(m, p);
+            Matrix C11 = C.view(0, 0, h, w), C12 = C.view(0, w, h, w);
+            Matrix C21 = C.view(h, 0, h, w), C22 = C.view(h, w, h, w);
+            addInto(C11, M1, 1);
+            addInto(C11, M4, 1);
+            addInto(C11, M5, -1);
+            addInto(C11, M7, 1);
+            addInto(C12, M3, 1);
+            addInto(C12, M5, 1);
+            addInto(C21, M2, 1);
+            addInto(C21, M4, 1);
+            addInto(C22, M1, 1);
+            addInto(C22, M2, -1);
+            addInto(C22, M3, 1);
+            addInto(C22, M6, 1);
+            return C;
+        }
+    }
+}
@@ -1,5 +1,8 @@
 public enum Strategy {
     ROW_CHUNKS,
     COL_CHUNKS,
-    STRIDED
+    STRIDED,
+    BLOCKED,    // cache tiles of C, packed panels of B
+    STRASSEN,   // StrassenMultiplier on ForkJoin, BLOCKED below the crossover
+    DYNAMIC     // BLOCKED tiles claimed from a shared counter instead of fixed ranges
 }
\ No newline at end of file